@@ -0,0 +1,89 @@
+package org.alixia.games.diplomacy;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.alixia.games.diplomacy.Board.Team;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javafx.application.Platform;
+
+/**
+ * Operations on the JavaFX {@link Board}. The board is never shown, so these
+ * measure the bookkeeping and scene graph work done by each operation, not
+ * rendering. The toolkit is started headlessly through Monocle so that these
+ * can run on machines without a display.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Dglass.platform=Monocle", "-Dmonocle.platform=Headless",
+		"-Dprism.order=sw" })
+public class BoardBenchmark {
+
+	@Param({ "8", "64", "256", "1024" })
+	public int size;
+
+	private Board board;
+	private BoardEntity piece;
+	private int team;
+
+	private static boolean toolkitStarted;
+
+	static synchronized void startToolkit() {
+		if (!toolkitStarted) {
+			Platform.startup(() -> {
+			});
+			toolkitStarted = true;
+		}
+	}
+
+	@Setup
+	public void setup() {
+		startToolkit();
+		board = new Board(size);
+		piece = board.getEntity(size - 2, size - 1);
+	}
+
+	@Benchmark
+	public BoardEntity put() {
+		// Move a piece back and forth between two empty cells.
+		return board.put(piece, board.getRow(piece) == 3 ? 4 : 3, 3);
+	}
+
+	@Benchmark
+	public Board swap() {
+		board.swap(0, 1, size - 1, 1);
+		return board;
+	}
+
+	@Benchmark
+	public List<BoardEntity> getEntities() {
+		return board.getEntities();
+	}
+
+	@Benchmark
+	public Team selectTeam() {
+		team = (team + 1) % Team.values().length;
+		board.selectTeam(Team.values()[team]);
+		return board.getCurrentTeam();
+	}
+
+	@Benchmark
+	public Board initBoard() {
+		return new Board(size);
+	}
+
+}
@@ -0,0 +1,82 @@
+package org.alixia.games.diplomacy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mutations of the headless {@link BoardState}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardStateBenchmark {
+
+	@Param({ "8", "32", "128", "256" })
+	public int size;
+
+	private BoardState state;
+	private long move;
+	/**
+	 * The first cell of the two middle rows, and which of them
+	 * {@link #putAndRemove()} used last.
+	 */
+	private int middle, offset;
+
+	@Setup
+	public void setup() {
+		state = new BoardState(size);
+		state.setup();
+		state.nextTurn();
+		middle = state.cell(size / 2 - 1, 0);
+		// Red's piece beside its tower, moving diagonally inwards.
+		move = Moves.of(Moves.MOVE, state.cell(size - 2, size - 1), state.cell(size - 3, size - 2));
+	}
+
+	/**
+	 * Puts a piece in, and takes it out of, each cell of the two middle rows in
+	 * turn. {@link BoardState#setup()} leaves every row but the first and last
+	 * two empty, so the board is the same after each call.
+	 */
+	@Benchmark
+	public int putAndRemove() {
+		offset = (offset + 1) % (size * 2);
+		int cell = middle + offset;
+		state.put(BoardState.WHITE_PIECE, cell);
+		return state.remove(cell);
+	}
+
+	@Benchmark
+	public long applyAndUndo() {
+		long token = state.apply(move);
+		long hash = state.hash();
+		state.undo(move, token);
+		return hash;
+	}
+
+	@Benchmark
+	public int nextTurn() {
+		state.nextTurn();
+		state.unqueue();
+		return state.getCurrentTeam();
+	}
+
+	@Benchmark
+	public long hash() {
+		return state.hash();
+	}
+
+}
@@ -0,0 +1,85 @@
+package org.alixia.games.diplomacy;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Move generation and legality checks. The position is the starting position
+ * played forward by random moves, so that there's more on the board than just
+ * the corners.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGeneratorBenchmark {
+
+	@Param({ "8", "32", "128", "256" })
+	public int size;
+
+	/**
+	 * How many random moves to play before measuring.
+	 */
+	@Param({ "60" })
+	public int moves;
+
+	private BoardState movePhase, placePhase;
+	private MoveGenerator generator;
+	private long[] buffer;
+	private int count;
+
+	@Setup
+	public void setup() {
+		generator = MoveGenerator.forSize(size);
+		buffer = new long[generator.getMaxMoves()];
+		movePhase = new BoardState(size);
+		movePhase.setup();
+		movePhase.nextTurn();
+		SplittableRandom random = new SplittableRandom(0);
+		for (int i = 0; i < moves; i++) {
+			int available = generator.generateMoves(movePhase, buffer);
+			movePhase.apply(available == 0 ? Moves.PASS : buffer[random.nextInt(available)]);
+		}
+
+		placePhase = movePhase.copy();
+		if (movePhase.isPieceQueued())
+			movePhase.unqueue();
+		else
+			placePhase.queue(BoardState.pieceOf(placePhase.getCurrentTeam()));
+		count = generator.generateMoves(movePhase, buffer);
+	}
+
+	@Benchmark
+	public int generateMoves() {
+		return generator.generateMoves(movePhase, buffer);
+	}
+
+	@Benchmark
+	public int generatePlacements() {
+		return generator.generateMoves(placePhase, buffer);
+	}
+
+	@Benchmark
+	public boolean isLegal() {
+		generator.generateMoves(movePhase, buffer);
+		boolean legal = true;
+		for (int i = 0; i < count; i++)
+			legal &= generator.isLegal(movePhase, buffer[i]);
+		return legal;
+	}
+
+}
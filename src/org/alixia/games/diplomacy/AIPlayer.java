@@ -0,0 +1,364 @@
+package org.alixia.games.diplomacy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A computer player that picks moves by searching ahead on a copy of the game.
+ * <p>
+ * Since there are three teams, the search is paranoid: the team that the
+ * search is for maximizes its evaluation while both other teams are assumed to
+ * be working together to minimize it. That turns the game back into a two sided
+ * one, where alpha-beta pruning applies. The search deepens one ply at a time
+ * until the time budget runs out, and the best move from the deepest search
+ * that finished is played.
+ * <p>
+ * At every depth, the best move from the previous depth is searched first, on
+ * its own, to get a good bound. The remaining moves at the root are then split
+ * into {@link ForkJoinPool} tasks that share that bound and tighten it as they
+ * finish, with idle workers stealing whatever moves are left. All of the
+ * threads share one {@link TranspositionTable}, so a position that one thread
+ * has already searched doesn't need to be searched again by another, or again
+ * by the same thread through a different order of moves.
+ */
+public final class AIPlayer {
+
+	private static final int WIN = 1_000_000, MAX_DEPTH = 64;
+
+	private static final int DEFAULT_TABLE_MEGABYTES = 64;
+
+	/**
+	 * How many nodes to search between checks of the clock.
+	 */
+	private static final int CLOCK_CHECK_INTERVAL = 1024;
+
+	private final long moveTimeNanos;
+	private final ForkJoinPool pool;
+	private final TranspositionTable table;
+
+	private final ThreadLocal<Searcher> searchers = new ThreadLocal<>();
+
+	/**
+	 * @param moveTimeMillis
+	 *            How long to spend choosing each move.
+	 * @param pool
+	 *            The pool that the search is run on.
+	 * @param table
+	 *            The table to store search results in. This can be shared with
+	 *            other players.
+	 */
+	public AIPlayer(long moveTimeMillis, ForkJoinPool pool, TranspositionTable table) {
+		if (moveTimeMillis <= 0)
+			throw new IllegalArgumentException("Move time must be positive.");
+		moveTimeNanos = moveTimeMillis * 1_000_000;
+		this.pool = pool;
+		this.table = table;
+	}
+
+	public AIPlayer(long moveTimeMillis) {
+		this(moveTimeMillis, ForkJoinPool.commonPool(), new TranspositionTable(DEFAULT_TABLE_MEGABYTES));
+	}
+
+	/**
+	 * Starts searching for a move for the team whose turn it is. The state is
+	 * copied before this returns, so the caller is free to keep changing it.
+	 *
+	 * @return A future that completes with the chosen move, as encoded by
+	 *         {@link Moves}. This is {@link Moves#PASS} if the team cannot move.
+	 */
+	public CompletableFuture<Long> findMoveAsync(BoardState state) {
+		BoardState copy = state.copy();
+		return CompletableFuture.supplyAsync(() -> findMove(copy), pool);
+	}
+
+	/**
+	 * Searches for a move for the team whose turn it is, blocking until the time
+	 * budget is used up. The given state is not modified.
+	 */
+	public long findMove(BoardState state) {
+		return pool.invoke(ForkJoinTask.adapt(() -> new Search(state).run()));
+	}
+
+	/**
+	 * Scratch space for searching, kept once per thread so that nodes don't
+	 * allocate.
+	 * <p>
+	 * Each player keeps its own, so a thread's searcher is shared by every search
+	 * of this player that the thread works on, and may only be used where the
+	 * thread can't start on another of them. {@link Search#search} never forks or
+	 * joins, so it's safe there. A thread waiting in
+	 * {@link ForkJoinTask#invokeAll} may run another search's
+	 * {@link Search.RootMove}s meanwhile, so nothing may still be using the
+	 * searcher when it starts waiting.
+	 */
+	private static final class Searcher {
+		private final BoardState state;
+		private final MoveGenerator generator;
+		private final long[][] moves = new long[MAX_DEPTH + 1][];
+		private final long[] entry = new long[2];
+		private int nodes;
+
+		private Searcher(int size) {
+			state = new BoardState(size);
+			generator = MoveGenerator.forSize(size);
+		}
+
+		private long[] moves(int ply) {
+			long[] buffer = moves[ply];
+			if (buffer == null)
+				buffer = moves[ply] = new long[generator.getMaxMoves()];
+			return buffer;
+		}
+	}
+
+	private Searcher searcher(int size) {
+		Searcher searcher = searchers.get();
+		if (searcher == null || searcher.state.getSize() != size)
+			searchers.set(searcher = new Searcher(size));
+		return searcher;
+	}
+
+	private final class Search {
+		private final BoardState root;
+		private final int team;
+		/**
+		 * Mixed into every hash, since the same position has a different score
+		 * depending on which team is searching.
+		 */
+		private final long teamKey;
+		private final long deadline;
+		private volatile boolean stopped;
+
+		private Search(BoardState root) {
+			this.root = root;
+			team = root.getCurrentTeam();
+			teamKey = BoardState.mix(0x7EA4_0000L + team);
+			deadline = System.nanoTime() + moveTimeNanos;
+			table.newSearch();
+		}
+
+		private long run() {
+			if (team == BoardState.NO_TEAM)
+				return Moves.PASS;
+			MoveGenerator generator = MoveGenerator.forSize(root.getSize());
+			long[] rootMoves = new long[generator.getMaxMoves()];
+			int count = generator.generateMoves(root, rootMoves);
+			if (count == 0)
+				return Moves.PASS;
+			orderMoves(root, rootMoves, count);
+
+			long best = rootMoves[0];
+			for (int depth = 1; depth <= MAX_DEPTH && !stopped; depth++) {
+				long result = searchRoot(rootMoves, count, depth);
+				if (stopped)
+					break;
+				best = result;
+
+				// Search the best move first next time around.
+				for (int i = 0; i < count; i++)
+					if (rootMoves[i] == best) {
+						System.arraycopy(rootMoves, 0, rootMoves, 1, i);
+						rootMoves[0] = best;
+						break;
+					}
+				if (System.nanoTime() > deadline)
+					break;
+			}
+			return best;
+		}
+
+		private long searchRoot(long[] moves, int count, int depth) {
+			Searcher searcher = searcher(root.getSize());
+			searcher.state.copyFrom(root);
+			long token = searcher.state.apply(moves[0]);
+			int bestScore = search(searcher, depth - 1, -WIN - 1, WIN + 1, 1);
+			searcher.state.undo(moves[0], token);
+			if (stopped || count == 1)
+				return moves[0];
+			// The searcher is done with here: while the other moves are searched, this
+			// thread may use it for them, or for some other search's.
+
+			AtomicInteger alpha = new AtomicInteger(bestScore);
+			List<RootMove> tasks = new ArrayList<>(count - 1);
+			for (int i = 1; i < count; i++)
+				tasks.add(new RootMove(moves[i], depth, alpha));
+			ForkJoinTask.invokeAll(tasks);
+
+			long best = moves[0];
+			for (RootMove task : tasks)
+				if (task.score > bestScore) {
+					bestScore = task.score;
+					best = task.move;
+				}
+			return best;
+		}
+
+		private final class RootMove extends RecursiveAction {
+			private static final long serialVersionUID = 1L;
+
+			private final long move;
+			private final int depth;
+			private final AtomicInteger alpha;
+			private int score = Integer.MIN_VALUE;
+
+			private RootMove(long move, int depth, AtomicInteger alpha) {
+				this.move = move;
+				this.depth = depth;
+				this.alpha = alpha;
+			}
+
+			@Override
+			protected void compute() {
+				if (stopped)
+					return;
+				Searcher searcher = searcher(root.getSize());
+				searcher.state.copyFrom(root);
+				searcher.state.apply(move);
+				int bound = alpha.get();
+				int result = search(searcher, depth - 1, bound, WIN + 1, 1);
+				// A result that didn't beat the bound is only an upper limit on the move's
+				// real score, which is all that's needed to know it isn't the best move.
+				if (stopped || result <= bound)
+					return;
+				score = result;
+				for (int current; result > (current = alpha.get());)
+					if (alpha.compareAndSet(current, result))
+						break;
+			}
+		}
+
+		private int search(Searcher searcher, int depth, int alpha, int beta, int ply) {
+			if ((++searcher.nodes & CLOCK_CHECK_INTERVAL - 1) == 0 && System.nanoTime() > deadline)
+				stopped = true;
+			if (stopped)
+				return 0;
+
+			BoardState state = searcher.state;
+			if (depth == 0 || ply == MAX_DEPTH || state.teamsRemaining() <= 1)
+				return evaluate(state, ply);
+
+			int originalAlpha = alpha, originalBeta = beta;
+			long hash = state.hash() ^ teamKey, tableMove = Moves.PASS;
+			if (table.probe(hash, searcher.entry)) {
+				long data = searcher.entry[0];
+				tableMove = searcher.entry[1];
+				if (TranspositionTable.depth(data) >= depth) {
+					int score = fromTable(TranspositionTable.score(data), ply);
+					switch (TranspositionTable.bound(data)) {
+					case TranspositionTable.EXACT:
+						return score;
+					case TranspositionTable.LOWER_BOUND:
+						alpha = Math.max(alpha, score);
+						break;
+					case TranspositionTable.UPPER_BOUND:
+						beta = Math.min(beta, score);
+						break;
+					}
+					if (alpha >= beta)
+						return score;
+				}
+			}
+
+			long[] moves = searcher.moves(ply);
+			int count = searcher.generator.generateMoves(state, moves);
+			if (count == 0) {
+				long token = state.apply(Moves.PASS);
+				int score = search(searcher, depth - 1, alpha, beta, ply + 1);
+				state.undo(Moves.PASS, token);
+				return score;
+			}
+			orderMoves(state, moves, count);
+			if (tableMove != Moves.PASS)
+				for (int i = 0; i < count; i++)
+					if (moves[i] == tableMove) {
+						moves[i] = moves[0];
+						moves[0] = tableMove;
+						break;
+					}
+
+			boolean maximizing = state.getCurrentTeam() == team;
+			int best = maximizing ? -WIN - 1 : WIN + 1;
+			long bestMove = moves[0];
+			for (int i = 0; i < count; i++) {
+				long token = state.apply(moves[i]);
+				int score = search(searcher, depth - 1, alpha, beta, ply + 1);
+				state.undo(moves[i], token);
+				if (maximizing ? score > best : score < best) {
+					best = score;
+					bestMove = moves[i];
+				}
+				if (maximizing) {
+					if (best > alpha)
+						alpha = best;
+				} else if (best < beta)
+					beta = best;
+				if (alpha >= beta)
+					break;
+			}
+
+			if (!stopped)
+				table.store(hash, toTable(best, ply), depth,
+						best <= originalAlpha ? TranspositionTable.UPPER_BOUND
+								: best >= originalBeta ? TranspositionTable.LOWER_BOUND : TranspositionTable.EXACT,
+						bestMove);
+			return best;
+		}
+
+		/**
+		 * Wins and losses are scored by how many plies away they are from the root,
+		 * but are stored relative to the position they're found from, so that they
+		 * stay correct when the position is reached at a different ply.
+		 */
+		private int toTable(int score, int ply) {
+			return score > WIN - MAX_DEPTH ? score + ply : score < -WIN + MAX_DEPTH ? score - ply : score;
+		}
+
+		private int fromTable(int score, int ply) {
+			return score > WIN - MAX_DEPTH ? score - ply : score < -WIN + MAX_DEPTH ? score + ply : score;
+		}
+
+		/**
+		 * Scores a position from the point of view of the team being searched for,
+		 * against the other two teams combined. Wins and losses that happen sooner are
+		 * scored further from zero than those that happen later.
+		 */
+		private int evaluate(BoardState state, int ply) {
+			int own = state.score(team), others = 0, othersRemaining = 0;
+			for (int t = 0; t < BoardState.TEAM_COUNT; t++)
+				if (t != team) {
+					int score = state.score(t);
+					others += score;
+					if (score != 0)
+						othersRemaining++;
+				}
+			if (own == 0)
+				return -WIN + ply;
+			if (othersRemaining == 0)
+				return WIN - ply;
+			return 2 * own - others;
+		}
+
+	}
+
+	/**
+	 * Moves the moves that replace enemy entities to the front of the buffer, so
+	 * that they're searched first and cause more cutoffs.
+	 */
+	private static void orderMoves(BoardState state, long[] moves, int count) {
+		int team = state.getCurrentTeam();
+		for (int i = 0, front = 0; i < count; i++) {
+			int target = state.get(Moves.to(moves[i]));
+			if (target != BoardState.EMPTY && BoardState.teamOf(target) != team) {
+				long move = moves[i];
+				moves[i] = moves[front];
+				moves[front++] = move;
+			}
+		}
+	}
+
+}
@@ -1,177 +1,531 @@
 package org.alixia.games.diplomacy;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.alixia.games.diplomacy.BoardEntity.Type;
 
-import javafx.beans.property.DoubleProperty;
-import javafx.beans.property.SimpleDoubleProperty;
-import javafx.collections.ListChangeListener;
-import javafx.event.EventHandler;
-import javafx.scene.Node;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.effect.DropShadow;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
 
 public final class Board extends Pane {
 
-	private final Object BOARD_ENTITY_CLICK_EVENT_HANDLER_KEY = new Object();
+	// The layers' images are set in #layoutChildren(), at the size they're drawn.
+	private final ImageView background = new ImageView(), hit_tint = new ImageView();
 
-	// Configure BoardEntities' image views to work with this board.
-	{
-		// TODO Add checkup to see if an image view is already bound to another board.
-		getChildren().addListener(new ListChangeListener<Node>() {
+	/**
+	 * The images that cover the whole board, rather than a single cell. The grid
+	 * is drawn between the first and the rest (see {@link Grid}).
+	 */
+	private final ImageView[] layers = { background, hit_tint };
+	private static final String[] LAYER_IMAGES = { ResourceManager.BACKGROUND, ResourceManager.HIT_TINT };
 
-			@Override
-			@SuppressWarnings("unchecked")
-			public void onChanged(Change<? extends Node> c) {
-				while (c.next())
-					if (c.wasAdded())
-						for (Node n : c.getAddedSubList())
-							if (n instanceof ImageView && BoardEntity.isBoardEntityImageView((ImageView) n)) {
-								ImageView img = (ImageView) n;
-								img.fitWidthProperty().bind(widthProperty.divide(getBoardSize()));
-								img.fitHeightProperty().bind(heightProperty.divide(getBoardSize()));
-
-								EventHandler<MouseEvent> handler = event -> {
-									BoardEntity clickedEntity = BoardEntity.getBoardEntity(n);
-									if (event.getButton().equals(MouseButton.PRIMARY)) {
-										handleEntityClicked(event, clickedEntity);
-										event.consume();
-									}
-								};
-								n.addEventFilter(MouseEvent.MOUSE_CLICKED, handler);
-
-								n.getProperties().put(BOARD_ENTITY_CLICK_EVENT_HANDLER_KEY, handler);
-
-							} else
-								;
-					else
-						for (Node n : c.getRemoved())
-							if (n instanceof ImageView && BoardEntity.isBoardEntityImageView((ImageView) n)) {
-
-								ImageView img = (ImageView) n;
-
-								img.fitWidthProperty().unbind();
-								img.fitHeightProperty().unbind();
-
-								// Also unbind the position that it has been bound to.
-
-								n.layoutXProperty().unbind();
-								n.layoutYProperty().unbind();
-
-								// And remove event handlers
-								n.removeEventFilter(MouseEvent.MOUSE_CLICKED, (EventHandler<MouseEvent>) n
-										.getProperties().remove(BOARD_ENTITY_CLICK_EVENT_HANDLER_KEY));
-
-							}
-			}
-		});
+	/**
+	 * What the grid is drawn on when the board is drawn with nodes. It's the size
+	 * of the viewport, and is redrawn only when the viewport changes.
+	 */
+	private final Canvas grid = new Canvas();
+	private boolean gridDrawn;
 
-	}
+	/**
+	 * The queued piece, shown in whichever cell the mouse is over.
+	 */
+	private final ImageView preview = new ImageView();
+
+	/**
+	 * The views that entities are shown with when the board is drawn with nodes.
+	 * Only the entities in the viewport are shown, so only that many views are
+	 * needed, however large the board is. Each layout hands the first views out
+	 * to whichever entities are visible, and hides the rest until they're needed
+	 * again.
+	 */
+	private final List<ImageView> entityViews = new ArrayList<>();
 
-	private final DoubleProperty widthProperty = new SimpleDoubleProperty(),
-			heightProperty = new SimpleDoubleProperty();
+	private final Rectangle clip = new Rectangle();
 
-	private final ImageView grid = new ImageView("/org/alixia/games/diplomacy/_resources/graphics/grid.png"),
-			background = new ImageView("/org/alixia/games/diplomacy/_resources/graphics/bg.png"),
-			hit_tint = new ImageView("/org/alixia/games/diplomacy/_resources/graphics/frame_dmg.png");
+	/**
+	 * Floating text, shown over everything else on the board.
+	 */
+	private final FloatingLabelLayer labels = new FloatingLabelLayer();
 
-	// Setup pane to distribute mouse events to handler methods
+	public FloatingLabelLayer getLabelLayer() {
+		return labels;
+	}
+
+	// Setup pane to distribute mouse events to handler methods. None of the
+	// board's children take mouse events, so every click lands on the board
+	// itself and is mapped to a cell here, rather than JavaFX picking out the node
+	// under the cursor. Glowing icons are larger than their cells, so the node
+	// under the cursor wouldn't necessarily be the entity in the clicked cell
+	// anyway.
 	{
 		addEventHandler(MouseEvent.MOUSE_CLICKED, event -> {
-			if (event.getButton().equals(MouseButton.PRIMARY))
-				handleBoardClicked(event, (int) (event.getSceneY() / heightProperty.get() * getBoardSize()),
-						(int) (event.getSceneX() / widthProperty.get() * getBoardSize()));
+			if (!event.getButton().equals(MouseButton.PRIMARY) || isComputerTurn() || isDisconnected())
+				return;
+			int row = rowAt(event.getY()), col = colAt(event.getX());
+			if (outsideBorders(row, col))
+				return;
+			Instrumentation.ClickEvent click = new Instrumentation.ClickEvent();
+			click.begin();
+			BoardEntity entity = getEntity(row, col);
+			if (entity != null)
+				handleEntityClicked(event, entity);
+			else
+				handleBoardClicked(event, row, col);
+			event.consume();
+			if (click.shouldCommit()) {
+				click.row = row;
+				click.col = col;
+				click.entity = entity != null;
+				click.commit();
+			}
 		});
 
 		addEventHandler(MouseEvent.MOUSE_MOVED, this::handleMouseMove);
+		addEventHandler(MouseEvent.MOUSE_EXITED, this::handleMouseExit);
+
+		// Scrolling zooms in and out around the mouse, and dragging with any button
+		// but the primary one pans.
+		addEventHandler(ScrollEvent.SCROLL, event -> {
+			setZoom(getZoom() * Math.pow(ZOOM_PER_SCROLL, event.getDeltaY() / SCROLL_DELTA), event.getX(),
+					event.getY());
+			event.consume();
+		});
+		addEventHandler(MouseEvent.MOUSE_PRESSED, this::handleMousePress);
+		addEventHandler(MouseEvent.MOUSE_DRAGGED, this::handleMouseDrag);
+
+		setClip(clip);
 	}
 
-	protected final List<BoardEntity> getEntities() {
-		List<BoardEntity> entities = new LinkedList<>();
-		for (BoardEntity[] beArr : entityMap)
-			for (BoardEntity be : beArr)
-				if (be != null)
-					entities.add(be);
+	/**
+	 * How much one scroll of the mouse wheel zooms by, and how far one scroll
+	 * usually moves the wheel.
+	 */
+	private static final double ZOOM_PER_SCROLL = 1.1, SCROLL_DELTA = 40;
+
+	/**
+	 * How many pixels wide or tall a cell can get when zooming in.
+	 */
+	private static final double MAX_CELL_PIXELS = 256;
+
+	/**
+	 * How far the board is zoomed in. At <code>1</code>, the whole board fits in
+	 * the viewport.
+	 */
+	private double zoom = 1;
+	/**
+	 * Where the viewport's top left corner is, in pixels, on the board as it's
+	 * drawn at the current zoom. These are always whole pixels, so that cells
+	 * drawn on a canvas line up with the pixels on the screen.
+	 */
+	private double viewX, viewY;
+	private double dragX, dragY;
+
+	public double getZoom() {
+		return zoom;
+	}
+
+	/**
+	 * @return How far the board can be zoomed in at its current size: until its
+	 *         cells are {@link #MAX_CELL_PIXELS} across.
+	 */
+	public double getMaxZoom() {
+		double viewportSize = Math.min(getWidth(), getHeight());
+		return viewportSize <= 0 ? 1 : Math.max(1, MAX_CELL_PIXELS * getBoardSize() / viewportSize);
+	}
+
+	public double getViewX() {
+		return viewX;
+	}
+
+	public double getViewY() {
+		return viewY;
+	}
+
+	/**
+	 * Zooms around the center of the viewport.
+	 */
+	public void setZoom(double zoom) {
+		setZoom(zoom, getWidth() / 2, getHeight() / 2);
+	}
+
+	/**
+	 * Zooms the board, keeping the given point where it is in the viewport.
+	 * 
+	 * @param zoom
+	 *            How far to zoom in. This is kept between <code>1</code> and
+	 *            {@link #getMaxZoom()}.
+	 * @param x
+	 *            The x coordinate of the point, relative to the board.
+	 * @param y
+	 *            The y coordinate of the point, relative to the board.
+	 */
+	public void setZoom(double zoom, double x, double y) {
+		zoom = Math.max(1, Math.min(getMaxZoom(), zoom));
+		if (zoom == this.zoom)
+			return;
+		viewX = (viewX + x) * zoom / this.zoom - x;
+		viewY = (viewY + y) * zoom / this.zoom - y;
+		this.zoom = zoom;
+		viewportChanged();
+	}
 
-		return Collections.unmodifiableList(entities);
+	/**
+	 * Moves the viewport by the given number of pixels.
+	 */
+	public void pan(double dx, double dy) {
+		viewX += dx;
+		viewY += dy;
+		viewportChanged();
+	}
+
+	private void viewportChanged() {
+		viewX = Math.round(Math.max(0, Math.min(getWidth() * (zoom - 1), viewX)));
+		viewY = Math.round(Math.max(0, Math.min(getHeight() * (zoom - 1), viewY)));
+		gridDrawn = false;
+		if (renderer != null)
+			renderer.markAllDirty();
+		pointerMoved = true;
+		requestLayout();
+	}
+
+	private double cellWidth() {
+		return getWidth() * zoom / getBoardSize();
+	}
+
+	private double cellHeight() {
+		return getHeight() * zoom / getBoardSize();
+	}
+
+	/**
+	 * @return The row of the cell at the given y coordinate, relative to the
+	 *         board, which may be outside of the board.
+	 */
+	private int rowAt(double y) {
+		return (int) Math.floor((y + viewY) / cellHeight());
+	}
+
+	/**
+	 * @return The column of the cell at the given x coordinate, relative to the
+	 *         board, which may be outside of the board.
+	 */
+	private int colAt(double x) {
+		return (int) Math.floor((x + viewX) / cellWidth());
 	}
 
-	// Setting sizing for images
+	private final List<BoardEntity> visibleEntities = new ArrayList<>();
+
+	/**
+	 * Finds every entity that can be seen in the viewport, including those just
+	 * outside of it whose glows could reach into it. This looks through whichever
+	 * is smaller: the cells in the viewport, or the entities on the board.
+	 * 
+	 * @return A list of the entities, which is reused on the next call.
+	 */
+	List<BoardEntity> getVisibleEntities() {
+		visibleEntities.clear();
+		double cellWidth = cellWidth(), cellHeight = cellHeight(),
+				margin = BoardEntity.getMaxGlowRadius(Math.min(cellWidth, cellHeight));
+		int size = getBoardSize(), firstRow = Math.max(0, rowAt(-margin)),
+				lastRow = Math.min(size - 1, rowAt(getHeight() + margin)), firstCol = Math.max(0, colAt(-margin)),
+				lastCol = Math.min(size - 1, colAt(getWidth() + margin));
+		if ((long) (lastRow - firstRow + 1) * (lastCol - firstCol + 1) <= entities.size()) {
+			for (int row = firstRow; row <= lastRow; row++)
+				for (int col = firstCol; col <= lastCol; col++)
+					if (entityMap[row][col] != null)
+						visibleEntities.add(entityMap[row][col]);
+		} else
+			for (int i = 0; i < entities.size(); i++) {
+				BoardEntity entity = entities.get(i);
+				if (entity.row >= firstRow && entity.row <= lastRow && entity.col >= firstCol
+						&& entity.col <= lastCol)
+					visibleEntities.add(entity);
+			}
+		return visibleEntities;
+	}
+
+	/**
+	 * Every entity on the board, and every entity on the board that belongs to
+	 * each team, in no particular order. These are kept up to date as entities are
+	 * put and removed, and each entity remembers its index in both (see
+	 * {@link BoardEntity#boardIndex} and {@link BoardEntity#teamIndex}) so that it
+	 * can be removed in constant time, by moving the last entity into its place.
+	 */
+	private final List<BoardEntity> entities = new ArrayList<>(), entitiesView = Collections.unmodifiableList(entities);
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private final List<BoardEntity>[] teamEntities = new List[Team.values().length],
+			teamEntitiesViews = new List[Team.values().length];
+
 	{
-		grid.fitHeightProperty().bind(heightProperty);
-		grid.fitWidthProperty().bind(widthProperty);
-		background.fitHeightProperty().bind(heightProperty);
-		background.fitWidthProperty().bind(widthProperty);
-		hit_tint.fitHeightProperty().bind(heightProperty);
-		hit_tint.fitWidthProperty().bind(widthProperty);
+		for (int i = 0; i < teamEntities.length; i++)
+			teamEntitiesViews[i] = Collections.unmodifiableList(teamEntities[i] = new ArrayList<>());
+	}
+
+	/**
+	 * @return A read-only, live view of every entity on the board. The view is
+	 *         not copied, so it changes as the board does, and should not be
+	 *         iterated over while the board is being changed.
+	 */
+	protected final List<BoardEntity> getEntities() {
+		return entitiesView;
+	}
+
+	/**
+	 * @return A read-only, live view of every entity on the board that belongs to
+	 *         the given team, in the same way as {@link #getEntities()}.
+	 */
+	protected final List<BoardEntity> getEntities(Team team) {
+		return teamEntitiesViews[team.ordinal()];
+	}
+
+	/**
+	 * @return How many entities of the given type are on the board.
+	 */
+	protected int count(Type type) {
+		return state.count(type.code());
+	}
+
+	private void track(BoardEntity entity) {
+		entity.boardIndex = entities.size();
+		entities.add(entity);
+		Team team = Team.of(entity.getType());
+		if (team != null) {
+			List<BoardEntity> list = teamEntities[team.ordinal()];
+			entity.teamIndex = list.size();
+			list.add(entity);
+		}
+	}
+
+	private void untrack(BoardEntity entity) {
+		removeAt(entities, entity.boardIndex).boardIndex = entity.boardIndex;
+		entity.boardIndex = -1;
+		Team team = Team.of(entity.getType());
+		if (team != null) {
+			removeAt(teamEntities[team.ordinal()], entity.teamIndex).teamIndex = entity.teamIndex;
+			entity.teamIndex = -1;
+		}
 	}
 
+	/**
+	 * Removes an element from a list by moving the list's last element into its
+	 * place.
+	 * 
+	 * @return The element that was moved, which is the removed element itself if
+	 *         it was the last one.
+	 */
+	private static <E> E removeAt(List<E> list, int index) {
+		E last = list.remove(list.size() - 1);
+		if (index < list.size())
+			list.set(index, last);
+		return last;
+	}
+
+	/**
+	 * How many cells wide and tall boards are, unless another size is given.
+	 */
+	public static final int DEFAULT_SIZE = 8;
+
 	public int getBoardSize() {
 		return entityMap.length;
 	}
 
 	// Building game board (laying out images)
 	{
-		getChildren().addAll(background, grid, hit_tint);
 		hit_tint.setOpacity(0);
 	}
 
-	@Override
-	protected void setWidth(double value) {
-		super.setWidth(value);
-		widthProperty.set(value);
+	/**
+	 * The ways that a {@link Board} can be drawn.
+	 */
+	public enum RenderMode {
+		/**
+		 * Every entity in the viewport is shown by its own {@link ImageView} in the
+		 * scene graph.
+		 */
+		NODES,
+		/**
+		 * The whole board is drawn on a single canvas, and only the cells that
+		 * change are redrawn. This keeps the scene graph the same size no matter
+		 * how many entities there are.
+		 */
+		CANVAS;
 	}
 
+	/**
+	 * The canvas renderer, when the board is drawn in {@link RenderMode#CANVAS}
+	 * mode, otherwise <code>null</code>.
+	 */
+	private final CanvasBoardRenderer renderer;
+
+	public RenderMode getRenderMode() {
+		return renderer == null ? RenderMode.NODES : RenderMode.CANVAS;
+	}
+
+	/**
+	 * Lays out everything in the viewport in one pass. Nothing is bound to the
+	 * board's size, so resizing, panning or zooming the board costs one call to
+	 * this, instead of updating a chain of bindings for every piece. This is also
+	 * where each visible entity is given a view, and the sprite for its current
+	 * glow.
+	 */
 	@Override
-	protected void setHeight(double value) {
-		super.setHeight(value);
-		heightProperty.set(value);
+	protected void layoutChildren() {
+		double width = getWidth(), height = getHeight();
+		clip.setWidth(width);
+		clip.setHeight(height);
+		// Keep the viewport on the board if the board has shrunk.
+		if (viewX > width * (zoom - 1) || viewY > height * (zoom - 1))
+			viewportChanged();
+
+		double boardWidth = width * zoom, boardHeight = height * zoom;
+		for (int i = 0; i < layers.length; i++)
+			layers[i].setImage(ResourceManager.getScaledImage(LAYER_IMAGES[i], boardWidth, boardHeight));
+		if (renderer == null) {
+			for (ImageView layer : layers) {
+				// Only the part of each layer in the viewport is shown.
+				double scaleX = layer.getImage().getWidth() / boardWidth,
+						scaleY = layer.getImage().getHeight() / boardHeight;
+				layer.setViewport(new Rectangle2D(viewX * scaleX, viewY * scaleY, width * scaleX, height * scaleY));
+				layer.setFitWidth(width);
+				layer.setFitHeight(height);
+				layer.relocate(0, 0);
+			}
+			if (!gridDrawn || grid.getWidth() != width || grid.getHeight() != height) {
+				grid.setWidth(width);
+				grid.setHeight(height);
+				GraphicsContext gc = grid.getGraphicsContext2D();
+				gc.clearRect(0, 0, width, height);
+				gc.save();
+				gc.translate(-viewX, -viewY);
+				Grid.draw(gc, getBoardSize(), boardWidth, boardHeight, viewX, viewY, width, height);
+				gc.restore();
+				gridDrawn = true;
+			}
+			grid.relocate(0, 0);
+			layoutEntityViews();
+		} else
+			renderer.render(width, height);
+
+		preview.setVisible(isPieceQueued() && previewRow != -1);
+		if (preview.isVisible())
+			show(preview, SpriteCache.getPreview(queuedPiece, cellWidth(), cellHeight()), previewRow, previewCol);
+	}
+
+	private void layoutEntityViews() {
+		List<BoardEntity> visible = getVisibleEntities();
+		while (entityViews.size() < visible.size()) {
+			ImageView view = new ImageView();
+			view.setMouseTransparent(true);
+			entityViews.add(view);
+			// Keep the preview and the labels on top.
+			getChildren().add(getChildren().size() - 2, view);
+		}
+		double cellWidth = cellWidth(), cellHeight = cellHeight();
+		for (int i = 0; i < visible.size(); i++) {
+			BoardEntity entity = visible.get(i);
+			ImageView view = entityViews.get(i);
+			view.setVisible(true);
+			show(view, SpriteCache.get(entity, cellWidth, cellHeight), entity.row, entity.col);
+		}
+		for (int i = visible.size(); i < entityViews.size(); i++) {
+			ImageView view = entityViews.get(i);
+			view.setVisible(false);
+			view.setImage(null);
+		}
+	}
+
+	/**
+	 * Shows a sprite in a view, over the given cell.
+	 */
+	private void show(ImageView view, SpriteCache.Sprite sprite, int row, int col) {
+		double cellWidth = cellWidth(), cellHeight = cellHeight(), padX = sprite.paddingX * cellWidth,
+				padY = sprite.paddingY * cellHeight;
+		view.setImage(sprite.image);
+		view.setViewport(sprite.viewport);
+		view.setFitWidth(cellWidth + 2 * padX);
+		view.setFitHeight(cellHeight + 2 * padY);
+		view.relocate(col * cellWidth - padX - viewX, row * cellHeight - padY - viewY);
 	}
 
 	private final BoardEntity[][] entityMap;
 
 	/**
-	 * For now, the board will be a size of eight. Once gridlines are drawn by the
-	 * program and not rendered by image, this can change.
-	 * 
+	 * The game itself. The {@link BoardEntity}s in {@link #entityMap} are just
+	 * what's shown for it; every change made to them is made to this as well.
+	 */
+	private final BoardState state;
+
+	/**
 	 * @param size
-	 *            The size of the game board.
+	 *            How many cells wide and tall the game board is. Each team starts
+	 *            in its own corner, so this must be at least <code>2</code>.
+	 * @param mode
+	 *            How the board is drawn.
 	 */
-	private Board(int size) {
+	public Board(int size, RenderMode mode) {
 		entityMap = new BoardEntity[size][size];
+		state = new BoardState(size);
+		if (mode == RenderMode.CANVAS) {
+			renderer = new CanvasBoardRenderer(this, background, hit_tint);
+			renderer.getCanvas().setMouseTransparent(true);
+			getChildren().add(renderer.getCanvas());
+		} else {
+			renderer = null;
+			for (ImageView layer : layers)
+				layer.setMouseTransparent(true);
+			grid.setMouseTransparent(true);
+			getChildren().addAll(background, grid, hit_tint);
+		}
+		preview.setMouseTransparent(true);
+		preview.setVisible(false);
+		getChildren().addAll(preview, labels);
 
 		initBoard();
 
 	}
 
+	/**
+	 * @return The headless state that this board is displaying. This should not be
+	 *         modified directly, since this board will not see the changes.
+	 */
+	protected BoardState getState() {
+		return state;
+	}
+
 	protected void initBoard() {
 		// Adding default pieces ~ this can only be done after entityMap is set and,
 		// therefore, can't be done during object initialization.
-
-		// blue pieces in top left
-		put(new BoardEntity(Type.BLUE_TOWER), 0, 0);// This is NOT the first square, since board indices start @ 0.
-		put(new BoardEntity(Type.BLUE_PIECE), 0, 1);
-		put(new BoardEntity(Type.BLUE_PIECE), 1, 0);
-
-		// white pieces in bottom left
-		put(new BoardEntity(Type.WHITE_TOWER), getBoardSize() - 1, 0);
-		put(new BoardEntity(Type.WHITE_PIECE), getBoardSize() - 2, 0);
-		put(new BoardEntity(Type.WHITE_PIECE), getBoardSize() - 1, 1);
-
-		// red pieces in bottom right
-		put(new BoardEntity(Type.RED_TOWER), getBoardSize() - 1, getBoardSize() - 1);
-		put(new BoardEntity(Type.RED_PIECE), getBoardSize() - 2, getBoardSize() - 1);
-		put(new BoardEntity(Type.RED_PIECE), getBoardSize() - 1, getBoardSize() - 2);
+		state.setup();
+		batching = true;
+		for (int cell = 0; cell < state.getCellCount(); cell++)
+			if (state.get(cell) != BoardState.EMPTY)
+				put(pool.obtain(Type.fromCode(state.get(cell))), state.row(cell), state.col(cell));
+		batching = false;
+		if (renderer != null)
+			renderer.markAllDirty();
+		requestLayout();
 
 		nextTurn();
+		history = new BoardHistory(state);
 
 	}
 
@@ -182,66 +536,689 @@ public final class Board extends Pane {
 	}
 
 	protected void selectTeam(Team team) {
-		if (currentTeam != null)
-			for (BoardEntity be : getEntities())
-				for (BoardEntity.Type be_t : getCurrentTeam().getBoardEntityTypes())
-					if (be.getType() == be_t)
-						be.deselectTeam();
+		Instrumentation.SelectTeamEvent event = new Instrumentation.SelectTeamEvent();
+		event.begin();
+		if (currentTeam != null) {
+			List<BoardEntity> previous = teamEntities[currentTeam.ordinal()];
+			for (int i = 0; i < previous.size(); i++) {
+				previous.get(i).deselectTeam();
+				redraw(previous.get(i));
+			}
+		}
 		currentTeam = team;
-		for (BoardEntity be : getEntities())
-			for (BoardEntity.Type be_t : team.getBoardEntityTypes())
-				if (be.getType() == be_t)
-					be.selectTeam(team);
+		state.setCurrentTeam(team.ordinal());
+		List<BoardEntity> current = teamEntities[team.ordinal()];
+		for (int i = 0; i < current.size(); i++) {
+			current.get(i).selectTeam(team);
+			redraw(current.get(i));
+		}
+		requestLayout();
+		if (event.shouldCommit()) {
+			event.team = team.name();
+			event.entities = current.size();
+			event.commit();
+		}
+	}
+
+	/**
+	 * @return How many entities are drawn with a glow: the current team's.
+	 */
+	public int getGlowingEntityCount() {
+		return currentTeam == null ? 0 : teamEntities[currentTeam.ordinal()].size();
 	}
 
 	protected void nextTurn() {
-		if (currentTeam == null) {
-			selectTeam(Team.RED);
+		Instrumentation.NextTurnEvent event = new Instrumentation.NextTurnEvent();
+		event.begin();
+		state.nextTurn();
+		selectTeam(Team.values()[state.getCurrentTeam()]);
+
+		if (state.isPieceQueued())
+			queuePiecePlace(pool.obtain(Type.fromCode(state.getQueued())));
+
+		emitChanges();
+		requestComputerMove();
+		if (event.shouldCommit()) {
+			event.team = currentTeam.name();
+			event.commit();
+		}
+
+	}
+
+	private final AIPlayer[] computerPlayers = new AIPlayer[Team.values().length];
+
+	/**
+	 * Incremented whenever the board moves on, so that a computer player's move
+	 * that arrives after the game has moved past it is dropped.
+	 */
+	private int computerMoveRequest;
+
+	/**
+	 * Hands control of a team over to a computer player, or back to the mouse.
+	 * 
+	 * @param team
+	 *            The team to control.
+	 * @param player
+	 *            The player to take control of the team, or <code>null</code> for
+	 *            the team to be played by clicking.
+	 */
+	public void setComputerPlayer(Team team, AIPlayer player) {
+		computerPlayers[team.ordinal()] = player;
+		requestComputerMove();
+	}
+
+	protected boolean isComputerTurn() {
+		return currentTeam != null && computerPlayers[currentTeam.ordinal()] != null;
+	}
+
+	/**
+	 * Starts the current team's computer player searching, if it has one. The
+	 * search runs off of the FX thread and its move is made on the FX thread once
+	 * it's found. If the search fails, the team makes the first move it can
+	 * instead, so that the game doesn't wait for a move that will never come.
+	 */
+	private void requestComputerMove() {
+		int request = ++computerMoveRequest;
+		if (!isComputerTurn())
 			return;
+		unselectEntity();
+		computerPlayers[currentTeam.ordinal()].findMoveAsync(state)
+				.whenComplete((move, error) -> Platform.runLater(() -> {
+					if (request == computerMoveRequest)
+						submitMove(error == null ? move : firstMove());
+				}));
+	}
+
+	/**
+	 * @return The first move that the current team can make, or
+	 *         {@link Moves#PASS} if it can't make any.
+	 */
+	private long firstMove() {
+		MoveGenerator generator = MoveGenerator.forSize(getBoardSize());
+		long[] moves = new long[generator.getMaxMoves()];
+		return generator.generateMoves(state, moves) == 0 ? Moves.PASS : moves[0];
+	}
+
+	/**
+	 * The entities that this board has dropped while making moves, kept to be
+	 * used again instead of making new ones.
+	 */
+	private final EntityPool pool = new EntityPool();
+
+	/**
+	 * Makes a move, as encoded by {@link Moves}, for the current team. This does
+	 * not check that the move is allowed.
+	 * <p>
+	 * Entities that are taken off of the board by the move are given back to the
+	 * {@link #pool}, and new ones are taken from it. (The selection is cleared
+	 * before anything is given back, so that nothing refers to it.)
+	 * <p>
+	 * The move is recorded in the board's {@link BoardHistory}, so that it can be
+	 * undone.
+	 */
+	protected void makeMove(long move) {
+		Instrumentation.TurnEvent event = new Instrumentation.TurnEvent();
+		boolean measuring = Instrumentation.isCounting() || event.isEnabled();
+		long start = measuring ? System.nanoTime() : 0, allocated = measuring ? Instrumentation.allocatedBytes() : 0;
+		event.begin();
+		Team team = currentTeam;
+
+		// The move is made even if it can't be recorded, and the failure is reported
+		// once it has been.
+		IOException journalFailure = null;
+		if (journal != null)
+			try {
+				journal.append(state, move);
+			} catch (IOException e) {
+				journalFailure = e;
+			}
+
+		play(move);
+		history.push(state, move);
+
+		if (measuring) {
+			lastTurnNanos = System.nanoTime() - start;
+			lastTurnAllocated = allocated < 0 ? -1 : Instrumentation.allocatedBytes() - allocated;
+		}
+		if (event.shouldCommit()) {
+			event.team = team == null ? null : team.name();
+			event.move = move;
+			event.allocated = lastTurnAllocated;
+			event.commit();
 		}
+		if (journalFailure != null)
+			journalFailed(journalFailure);
+	}
 
-		Team[] teams = Team.values();
-		int point = currentTeam.ordinal();
-		if (++point == teams.length) {
-			point = 0;
-			nextRound();
-		}
-
-		selectTeam(teams[point]);
-
-		if (startPlacingPieces) {
-			BoardEntity entity;
-			switch (getCurrentTeam()) {
-			case RED:
-				entity = new BoardEntity(Type.RED_PIECE);
-				break;
-			case WHITE:
-				entity = new BoardEntity(Type.WHITE_PIECE);
-				break;
-			case BLUE:
-				entity = new BoardEntity(Type.BLUE_PIECE);
-				break;
-			default:
-				entity = new BoardEntity(Type.RED_PIECE);
+	/**
+	 * How long the last move took to make, and how many bytes the FX thread
+	 * allocated making it. These are only measured while
+	 * {@link Instrumentation#isCounting()} or a recording of turn events is on.
+	 */
+	private long lastTurnNanos = -1, lastTurnAllocated = -1;
+
+	/**
+	 * @return How long, in nanoseconds, the last move that was measured took to
+	 *         make, including handing the turn to the next team, or
+	 *         <code>-1</code> if none has been.
+	 */
+	public long getLastTurnNanos() {
+		return lastTurnNanos;
+	}
+
+	/**
+	 * @return How many bytes the FX thread allocated making the last move that
+	 *         was measured, or <code>-1</code> if that isn't known.
+	 */
+	public long getLastTurnAllocatedBytes() {
+		return lastTurnAllocated;
+	}
+
+	private void play(long move) {
+		if (move == Moves.PASS) {
+			BoardEntity queued = isPieceQueued() ? unQueuePiece() : null;
+			unselectEntity();
+			recycle(queued);
+			nextTurn();
+			return;
+		}
+
+		int size = getBoardSize(), from = Moves.from(move), to = Moves.to(move);
+		int fromRow = from / size, fromCol = from % size, row = to / size, col = to % size;
+		switch (Moves.kind(move)) {
+		case Moves.MOVE:
+			BoardEntity captured = put(getEntity(fromRow, fromCol), row, col);
+			unselectEntity();
+			recycle(captured);
+			nextTurn();
+			break;
+		case Moves.SPAWN:
+			Type piece = Type.fromCode(BoardState.pieceOf(state.getCurrentTeam()));
+			BoardEntity tower = put(pool.obtain(Type.UNCLAIMED_TOWER), fromRow, fromCol);
+			captured = put(pool.obtain(piece), row, col);
+			unselectEntity();
+			recycle(tower);
+			recycle(captured);
+			nextTurn();
+			break;
+		case Moves.CLAIM:
+			Team team = getCurrentTeam();
+			BoardEntity claimed = put(pool.obtain(Type.fromCode(BoardState.towerOf(team.ordinal()))), row, col);
+			recycle(claimed);
+			recycle(unQueuePiece());
+			selectTeam(team);
+			requestComputerMove();
+			break;
+		case Moves.PLACE:
+			BoardEntity placed = unQueuePiece();
+			put(placed, row, col);
+			placed.selectTeam(getCurrentTeam());
+			redraw(placed);
+			requestComputerMove();
+			break;
+		}
+	}
+
+	private BoardHistory history;
+
+	/**
+	 * @return Whether there's a move to take back. Moves can't be taken back in a
+	 *         game played over a network.
+	 */
+	public boolean canUndo() {
+		return client == null && history.canUndo();
+	}
+
+	public boolean canRedo() {
+		return client == null && history.canRedo();
+	}
+
+	/**
+	 * Takes back the last move made, or the last move redone.
+	 *
+	 * @return Whether there was a move to take back.
+	 */
+	public boolean undo() {
+		if (!canUndo())
+			return false;
+		restore(history::undo);
+		return true;
+	}
+
+	/**
+	 * Makes the last move taken back again.
+	 *
+	 * @return Whether there was a move to make again.
+	 */
+	public boolean redo() {
+		if (!canRedo())
+			return false;
+		restore(history::redo);
+		return true;
+	}
+
+	/**
+	 * @return The game as it is now, which can be gone back to with
+	 *         {@link #checkout(BoardHistory.Version)}.
+	 */
+	public BoardHistory.Version getVersion() {
+		return history.getVersion();
+	}
+
+	/**
+	 * Puts the game back into a version that it was in before, such as to try
+	 * different moves from that point. This can be undone.
+	 */
+	public void checkout(BoardHistory.Version version) {
+		if (client != null)
+			throw new IllegalStateException("A game played over a network can't be changed locally.");
+		restore(state -> history.checkout(version, state));
+	}
+
+	/**
+	 * @return The game as it is now, packed.
+	 */
+	public PackedBoard pack() {
+		return PackedBoard.of(state);
+	}
+
+	/**
+	 * Puts the game into the state held by a packed board, which must be the same
+	 * size as this one. Only the cells that differ are changed, and this can be
+	 * undone.
+	 */
+	public void load(PackedBoard board) {
+		if (board.getSize() != getBoardSize())
+			throw new IllegalArgumentException("Board size " + board.getSize() + " does not match " + getBoardSize() + ".");
+		restore(state -> {
+			int[] cells = new int[state.getCellCount()];
+			int count = 0;
+			for (int cell = 0; cell < cells.length; cell++)
+				if (board.get(cell) != state.get(cell))
+					cells[count++] = cell;
+			cells = Arrays.copyOf(cells, count);
+			board.unpack(state);
+			history.push(state, cells);
+			return cells;
+		});
+	}
+
+	/**
+	 * Any number of placements and removals, made to a {@link Board} all at once
+	 * by {@link #commit()}. Nothing on the board changes until then; the game is
+	 * changed first, and then the board is brought up to date with it in one pass,
+	 * so the whole batch is laid out and redrawn once, sent to change listeners as
+	 * one {@link ChangeFrame}, and undone as one step. This is much faster than
+	 * calling {@link Board#put(BoardEntity, int, int)} over and over, such as for
+	 * setting up a scenario.
+	 */
+	public final class Transaction {
+		private int[] cells = new int[16];
+		private byte[] types = new byte[16];
+		private int count;
+		private boolean committed;
+
+		private Transaction() {
+		}
+
+		private Transaction add(int row, int col, int type) {
+			if (committed)
+				throw new IllegalStateException("The transaction was already committed.");
+			int size = getBoardSize();
+			if (row < 0 || col < 0 || row >= size || col >= size)
+				throw new IndexOutOfBoundsException("(" + row + ", " + col + ") is not on a board of size " + size + ".");
+			if (count == cells.length) {
+				cells = Arrays.copyOf(cells, count * 2);
+				types = Arrays.copyOf(types, count * 2);
+			}
+			cells[count] = row * size + col;
+			types[count++] = (byte) type;
+			return this;
+		}
+
+		/**
+		 * Puts a new entity of the given type at the given position, replacing
+		 * whatever is there.
+		 */
+		public Transaction put(Type type, int row, int col) {
+			return add(row, col, Objects.requireNonNull(type).code());
+		}
+
+		/**
+		 * Takes whatever is at the given position off of the board.
+		 */
+		public Transaction remove(int row, int col) {
+			return add(row, col, BoardState.EMPTY);
+		}
+
+		/**
+		 * Makes every change in this transaction, in the order that they were
+		 * given. A transaction can only be committed once.
+		 */
+		public void commit() {
+			if (client != null)
+				throw new IllegalStateException("A game played over a network can't be changed locally.");
+			if (committed)
+				throw new IllegalStateException("The transaction was already committed.");
+			committed = true;
+			// restore() takes the queued piece off of the board before changing the
+			// game, and queues whatever the changed game has queued.
+			int queued = state.getQueued();
+			restore(state -> {
+				state.queue(queued);
+				for (int i = 0; i < count; i++)
+					state.put(types[i], cells[i]);
+				// Only the cells that ended up different from their entities need to be
+				// changed, each once.
+				int[] changed = new int[count];
+				int changedCount = 0, size = getBoardSize();
+				for (int i = 0; i < count; i++) {
+					int cell = cells[i], row = cell / size, col = cell % size;
+					if (state.get(cell) != (hasEntity(row, col) ? getEntity(row, col).getType().code() : BoardState.EMPTY))
+						changed[changedCount++] = cell;
+				}
+				Arrays.sort(changed, 0, changedCount);
+				int unique = 0;
+				for (int i = 0; i < changedCount; i++)
+					if (unique == 0 || changed[unique - 1] != changed[i])
+						changed[unique++] = changed[i];
+				changed = Arrays.copyOf(changed, unique);
+				history.push(state, changed);
+				return changed;
+			});
+		}
+	}
+
+	/**
+	 * @return A new, empty transaction on this board.
+	 */
+	public Transaction beginTransaction() {
+		return new Transaction();
+	}
+
+	/**
+	 * Changes the game with the given function, which returns the cells that it
+	 * changed, and then updates only the entities in those cells to match, as one
+	 * batch: the board is laid out and redrawn once for all of them, and one
+	 * {@link ChangeFrame} and one {@link BoardHistory.Version} cover them. The
+	 * current team, the queued piece and any computer player's search start over
+	 * from the changed game.
+	 */
+	private void restore(Function<BoardState, int[]> change) {
+		unselectEntity();
+		recycle(isPieceQueued() ? unQueuePiece() : null);
+
+		int size = getBoardSize();
+		int[] cells = change.apply(state);
+		batching = true;
+		try {
+			for (int cell : cells) {
+				int row = cell / size, col = cell % size, type = state.get(cell);
+				// The state has already changed, so what was in the cell is taken from the
+				// entity.
+				recordChange(cell, hasEntity(row, col) ? getEntity(row, col).getType().code() : BoardState.EMPTY);
+				recycle(type == BoardState.EMPTY ? remove(row, col) : put(pool.obtain(Type.fromCode(type)), row, col));
 			}
-			queuePiecePlace(entity);
+		} finally {
+			batching = false;
 		}
+		if (renderer != null)
+			for (int cell : cells)
+				renderer.markDirty(cell / size, cell % size);
+		requestLayout();
+
+		if (state.getCurrentTeam() != BoardState.NO_TEAM)
+			selectTeam(Team.values()[state.getCurrentTeam()]);
+		if (state.isPieceQueued())
+			queuePiecePlace(pool.obtain(Type.fromCode(state.getQueued())));
+		emitChanges();
+		requestComputerMove();
+
+		if (journal != null)
+			try {
+				journal.restart(state);
+			} catch (IOException e) {
+				journalFailed(e);
+			}
+	}
+
+	private final List<Consumer<? super ChangeFrame>> changeListeners = new ArrayList<>();
+
+	/**
+	 * Whether each cell has changed since the last {@link ChangeFrame}, as a
+	 * bitboard. This is only made once something listens for changes.
+	 */
+	private long[] changedBits;
+	/**
+	 * The cells that have changed since the last frame, in the order they first
+	 * changed, and the type that each held before it changed.
+	 */
+	private int[] changedCells = new int[16];
+	private byte[] changedTypes = new byte[16];
+	private int changedCount;
+	private long changeSequence;
+
+	/**
+	 * Has the given listener told, on the FX thread, about everything that
+	 * changes on this board from now on, a turn at a time. Each turn's changes
+	 * are sent as one {@link ChangeFrame} once the next team's turn has started
+	 * (or once the board has been {@link #undo() undone}, {@link #redo() redone}
+	 * or {@link #load(PackedBoard) loaded}).
+	 */
+	public void addChangeListener(Consumer<? super ChangeFrame> listener) {
+		changeListeners.add(listener);
+	}
+
+	public void removeChangeListener(Consumer<? super ChangeFrame> listener) {
+		changeListeners.remove(listener);
+		if (changeListeners.isEmpty())
+			// Whatever was recorded would be stale by the time anything listens again.
+			for (; changedCount > 0; changedCount--)
+				changedBits[changedCells[changedCount - 1] >>> 6] = 0;
+	}
+
+	/**
+	 * @return The sequence number of the last {@link ChangeFrame} sent, or
+	 *         <code>0</code> if none has been.
+	 */
+	public long getChangeSequence() {
+		return changeSequence;
+	}
+
+	/**
+	 * Notes that a cell is changing, for the next {@link ChangeFrame}. Only the
+	 * first change to each cell in a frame is kept, since that's the one with the
+	 * type that the cell had before the frame.
+	 */
+	private void recordChange(int cell, int oldType) {
+		if (changeListeners.isEmpty())
+			return;
+		if (changedBits == null)
+			changedBits = new long[(state.getCellCount() + 63) >>> 6];
+		if ((changedBits[cell >>> 6] & 1L << cell) != 0)
+			return;
+		changedBits[cell >>> 6] |= 1L << cell;
+		if (changedCount == changedCells.length) {
+			changedCells = Arrays.copyOf(changedCells, changedCount * 2);
+			changedTypes = Arrays.copyOf(changedTypes, changedCount * 2);
+		}
+		changedCells[changedCount] = cell;
+		changedTypes[changedCount++] = (byte) oldType;
+	}
+
+	/**
+	 * Sends everything that has changed since the last frame to the change
+	 * listeners, as one frame.
+	 */
+	private void emitChanges() {
+		if (changeListeners.isEmpty())
+			return;
+		int[] cells = new int[changedCount];
+		byte[] types = new byte[changedCount];
+		int count = 0;
+		for (int i = 0; i < changedCount; i++) {
+			int cell = changedCells[i];
+			changedBits[cell >>> 6] &= ~(1L << cell);
+			if (changedTypes[i] != state.get(cell)) {
+				cells[count] = cell;
+				types[count++] = (byte) (changedTypes[i] << 4 | state.get(cell));
+			}
+		}
+		changedCount = 0;
+		ChangeFrame frame = new ChangeFrame(++changeSequence, Arrays.copyOf(cells, count), Arrays.copyOf(types, count),
+				state.getCurrentTeam(), state.getQueued(), state.isPlacing());
+		for (int i = 0; i < changeListeners.size(); i++)
+			changeListeners.get(i).accept(frame);
+	}
+
+	private GameClient client;
+	private Consumer<? super IOException> clientErrorHandler;
+	/**
+	 * Whether the connection to the server has closed. Nothing can be played on
+	 * the board after that.
+	 */
+	private boolean disconnected;
+
+	/**
+	 * @return Whether this board was playing on a server, and the connection has
+	 *         since closed.
+	 */
+	public boolean isDisconnected() {
+		return disconnected;
+	}
+
+	/**
+	 * Makes this board show a game played on a {@link GameServer}. The client
+	 * should not have been started, and should join a session once this returns.
+	 * <p>
+	 * From then on, moves made on this board, by clicking or by computer players,
+	 * are sent to the server instead of being made, and only the moves that the
+	 * server sends back are made. The server decides which of this board's teams
+	 * it will take moves for. Once the connection closes, the board stops taking
+	 * moves.
+	 * <p>
+	 * If a move can't be sent, the server doesn't allow one or sends an error, or
+	 * the connection fails, the error is thrown, as an
+	 * {@link UncheckedIOException}, on the FX thread.
+	 */
+	public void setClient(GameClient client) {
+		setClient(client, null);
+	}
+
+	/**
+	 * Makes this board show a game played on a {@link GameServer}, as
+	 * {@link #setClient(GameClient)} does, except that errors are given to the
+	 * given handler, on the FX thread, instead of being thrown. Moves that the
+	 * server doesn't allow, and errors that it sends, are given as
+	 * {@link ProtocolException}s.
+	 */
+	public void setClient(GameClient client, Consumer<? super IOException> errorHandler) {
+		this.client = client;
+		clientErrorHandler = errorHandler;
+		client.start(new GameClient.Listener() {
+			@Override
+			public void joined(int session, PackedBoard board) {
+				Platform.runLater(() -> load(board));
+			}
+
+			@Override
+			public void moved(long[] moves) {
+				Platform.runLater(() -> {
+					for (long move : moves)
+						makeMove(move);
+				});
+			}
 
+			@Override
+			public void rejected(int index) {
+				Platform.runLater(() -> clientFailed(new ProtocolException("The server didn't allow that move.")));
+			}
+
+			@Override
+			public void error(String message) {
+				Platform.runLater(() -> clientFailed(new ProtocolException("The server sent an error: " + message)));
+			}
+
+			@Override
+			public void disconnected(IOException error) {
+				Platform.runLater(() -> {
+					disconnected = true;
+					unselectEntity();
+					if (error != null)
+						clientFailed(error);
+				});
+			}
+		});
+	}
+
+	private void clientFailed(IOException error) {
+		if (clientErrorHandler == null)
+			throw new UncheckedIOException("Playing on the server failed.", error);
+		clientErrorHandler.accept(error);
+	}
+
+	/**
+	 * Makes a move, or sends it to the server if playing over a network.
+	 */
+	private void submitMove(long move) {
+		if (client == null)
+			makeMove(move);
+		else if (!disconnected)
+			try {
+				client.send(move);
+			} catch (IOException e) {
+				clientFailed(e);
+			}
 	}
 
-	protected void nextRound() {
-		startPlacingPieces = true;
+	private MoveJournal.Writer journal;
+	private Consumer<? super IOException> journalErrorHandler;
+
+	/**
+	 * Records every move made on this board from now on to the given journal, or
+	 * stops recording if it's <code>null</code>. The journal is not closed by this
+	 * board.
+	 * <p>
+	 * If writing to the journal fails, recording stops, and the change that was
+	 * being recorded is still made on the board. The error is then thrown, as an
+	 * {@link UncheckedIOException}, by whatever made the change.
+	 */
+	public void setJournal(MoveJournal.Writer journal) {
+		setJournal(journal, null);
 	}
 
-	private boolean startPlacingPieces = false;
+	/**
+	 * Records every move made on this board from now on to the given journal, as
+	 * {@link #setJournal(MoveJournal.Writer)} does, except that if writing to it
+	 * fails, the error is given to the given handler instead of being thrown.
+	 */
+	public void setJournal(MoveJournal.Writer journal, Consumer<? super IOException> errorHandler) {
+		this.journal = journal;
+		journalErrorHandler = errorHandler;
+	}
+
+	private void journalFailed(IOException error) {
+		Consumer<? super IOException> handler = journalErrorHandler;
+		journal = null;
+		journalErrorHandler = null;
+		if (handler == null)
+			throw new UncheckedIOException("Recording to the journal failed, so it was stopped.", error);
+		handler.accept(error);
+	}
+
+	private void recycle(BoardEntity entity) {
+		if (entity != null)
+			pool.recycle(entity);
+	}
 
 	protected void queuePiecePlace(BoardEntity piece) {
 		if (isPieceQueued())
 			unQueuePiece();
-		piece.icon.setOpacity(0.35);
-		piece.icon.setMouseTransparent(true);
-		getChildren().add(piece.icon);
+		state.queue(piece.getType().code());
 		queuedPiece = piece;
+		previewRow = previewCol = -1;
+		pointerMoved = true;
+		previewTimer.start();
 	}
 
 	private BoardEntity queuedPiece;
@@ -257,19 +1234,71 @@ public final class Board extends Pane {
 	protected BoardEntity unQueuePiece() {
 		BoardEntity entity = queuedPiece;
 		queuedPiece = null;
-		getChildren().remove(entity.icon);
-		entity.icon.setLayoutX(0);
-		entity.icon.setLayoutY(0);
-		entity.icon.setOpacity(1);
-		entity.icon.setMouseTransparent(false);
+		state.unqueue();
+		previewTimer.stop();
+		requestLayout();
 		return entity;
 	}
 
+	/**
+	 * The last position of the mouse over the board, or {@link Double#NaN} if it
+	 * isn't over the board.
+	 */
+	private double pointerX = Double.NaN, pointerY = Double.NaN;
+	private boolean pointerMoved;
+	/**
+	 * The cell that the queued piece is previewed in, or <code>-1</code> if it
+	 * isn't shown.
+	 */
+	private int previewRow = -1, previewCol = -1;
+
+	/**
+	 * Moves the queued piece's preview to the cell under the mouse, at most once
+	 * per frame, however many times the mouse moved in between. It's only moved,
+	 * and the board only laid out again, when the mouse moves to a different
+	 * cell. This runs only while a piece is queued.
+	 */
+	private final AnimationTimer previewTimer = new AnimationTimer() {
+
+		@Override
+		public void handle(long now) {
+			if (!pointerMoved)
+				return;
+			pointerMoved = false;
+			int row = rowAt(pointerY), col = colAt(pointerX);
+			// Comparisons with NaN are false, so this catches the mouse leaving too.
+			if (!(pointerX >= 0 && pointerY >= 0) || outsideBorders(row, col))
+				row = col = -1;
+			if (row != previewRow || col != previewCol) {
+				previewRow = row;
+				previewCol = col;
+				requestLayout();
+			}
+		}
+	};
+
 	private void handleMouseMove(MouseEvent event) {
-		if (!isPieceQueued())
+		pointerX = event.getX();
+		pointerY = event.getY();
+		pointerMoved = true;
+	}
+
+	private void handleMouseExit(MouseEvent event) {
+		pointerX = pointerY = Double.NaN;
+		pointerMoved = true;
+	}
+
+	private void handleMousePress(MouseEvent event) {
+		dragX = event.getX();
+		dragY = event.getY();
+	}
+
+	private void handleMouseDrag(MouseEvent event) {
+		if (event.isPrimaryButtonDown())
 			return;
-		queuedPiece.icon.setLayoutX(event.getSceneX() - queuedPiece.icon.getFitWidth() / 2);
-		queuedPiece.icon.setLayoutY(event.getSceneY() - queuedPiece.icon.getFitHeight() / 2);
+		pan(dragX - event.getX(), dragY - event.getY());
+		dragX = event.getX();
+		dragY = event.getY();
 	}
 
 	protected enum Team {
@@ -298,10 +1327,21 @@ public final class Board extends Pane {
 			return boardEntityTypes;
 		}
 
+		/**
+		 * @return The team that entities of the given type belong to, or
+		 *         <code>null</code> for unclaimed towers.
+		 */
+		public static Team of(BoardEntity.Type type) {
+			int team = BoardState.teamOf(type.code());
+			return team == BoardState.NO_TEAM ? null : values()[team];
+		}
+
 	}
 
 	protected void swap(int row0, int col0, int row1, int col1) {
-		put(put(getEntity(row0, col0), row1, col1), row0, col0);
+		BoardEntity displaced = put(getEntity(row0, col0), row1, col1);
+		if (displaced != null)
+			put(displaced, row0, col0);
 	}
 
 	protected void swap(BoardEntity first, BoardEntity second) {
@@ -309,31 +1349,27 @@ public final class Board extends Pane {
 	}
 
 	protected int getRow(BoardEntity entity) {
-		for (int i = 0; i < entityMap.length; i++) {
-			for (int j = 0; j < entityMap[i].length; j++) {
-				if (entityMap[i][j] == entity)
-					return i;
-			}
-		}
-		return -1;
+		return containsEntity(entity) ? entity.row : -1;
 	}
 
 	protected int getCol(BoardEntity entity) {
-		for (int i = 0; i < entityMap.length; i++) {
-			for (int j = 0; j < entityMap[i].length; j++) {
-				if (entityMap[i][j] == entity)
-					return i = j;
-			}
-		}
-		return -1;
+		return containsEntity(entity) ? entity.col : -1;
 	}
 
 	public Board() {
-		this(8);
+		this(RenderMode.NODES);
+	}
+
+	public Board(RenderMode mode) {
+		this(DEFAULT_SIZE, mode);
+	}
+
+	public Board(int size) {
+		this(size, RenderMode.NODES);
 	}
 
 	private boolean outsideBorders(int row, int col) {
-		return row > entityMap.length || row < 0 || col > entityMap.length || col < 0;
+		return row >= entityMap.length || row < 0 || col >= entityMap.length || col < 0;
 	}
 
 	protected boolean hasEntity(int row, int col) {
@@ -345,39 +1381,103 @@ public final class Board extends Pane {
 	}
 
 	protected BoardEntity put(BoardEntity entity, int row, int col) {
+		Instrumentation.PutEvent event = new Instrumentation.PutEvent();
+		event.begin();
+		BoardEntity previous = place(entity, row, col);
+		if (event.shouldCommit()) {
+			event.row = row;
+			event.col = col;
+			event.type = entity.getType().name();
+			event.commit();
+		}
+		return previous;
+	}
+
+	private BoardEntity place(BoardEntity entity, int row, int col) {
 		Objects.requireNonNull(entity);
 		if (outsideBorders(row, col))
 			throw new RuntimeException("Position outside of board borders.");
 
 		// Remove previous entity from board
 		BoardEntity previousEntity = entityMap[row][col];
-		if (previousEntity != null)
-			getChildren().remove(previousEntity.icon);
+		if (previousEntity == entity)
+			return previousEntity;
+		recordChange(state.cell(row, col), state.put(entity.getType().code(), state.cell(row, col)));
+		if (previousEntity != null) {
+			previousEntity.row = previousEntity.col = -1;
+			untrack(previousEntity);
+		}
 
 		// Remove new entity from its previous position.
-		if (containsEntity(entity))
-			entityMap[getRow(entity)][getCol(entity)] = null;
+		if (containsEntity(entity)) {
+			entityMap[entity.row][entity.col] = null;
+			recordChange(state.cell(entity.row, entity.col), state.remove(state.cell(entity.row, entity.col)));
+			cellChanged(entity.row, entity.col);
+		} else
+			track(entity);
 
 		// Add new entity to board.
 		entityMap[row][col] = entity;
-		if (!getChildren().contains(entity.icon))
-			getChildren().add(entity.icon);
-
-		setPos(entity, row, col);
+		entity.row = row;
+		entity.col = col;
+		cellChanged(row, col);
 
 		return previousEntity;
 
 	}
 
-	private void setPos(BoardEntity entity, int row, int col) {
-		// Every time these methods are called, the previous binds are overridden. (I
-		// think.)
-		entity.icon.layoutXProperty().bind(widthProperty.multiply(col).divide(getBoardSize()));
-		entity.icon.layoutYProperty().bind(heightProperty.multiply(row).divide(getBoardSize()));
+	/**
+	 * Removes whatever entity is at the given position from the board.
+	 * 
+	 * @param row
+	 *            The row of the entity to remove.
+	 * @param col
+	 *            The column of the entity to remove.
+	 * @return The removed entity, or <code>null</code> if the cell was empty.
+	 */
+	protected BoardEntity remove(int row, int col) {
+		if (outsideBorders(row, col))
+			throw new RuntimeException("Position outside of board borders.");
+		BoardEntity entity = entityMap[row][col];
+		if (entity != null) {
+			entityMap[row][col] = null;
+			recordChange(state.cell(row, col), state.remove(state.cell(row, col)));
+			entity.row = entity.col = -1;
+			untrack(entity);
+			cellChanged(row, col);
+		}
+		return entity;
+	}
+
+	/**
+	 * Whether entities are being put and removed as part of a batch, in which
+	 * case nothing is redrawn until the whole batch is done.
+	 */
+	private boolean batching;
+
+	private void cellChanged(int row, int col) {
+		if (batching)
+			return;
+		if (renderer != null)
+			renderer.markDirty(row, col);
+		requestLayout();
+	}
+
+	/**
+	 * Redraws the given entity after its glow has changed. Sprites are picked in
+	 * the layout pass, so this just schedules one, after marking the entity's cell
+	 * as dirty if the board is drawn on a canvas.
+	 */
+	private void redraw(BoardEntity entity) {
+		if (renderer != null && containsEntity(entity))
+			renderer.markDirty(entity.row, entity.col);
+		requestLayout();
 	}
 
 	protected boolean containsEntity(BoardEntity entity) {
-		return getRow(entity) != -1;
+		// An entity only remembers its last coordinates, so check that this board is
+		// actually the one holding it there.
+		return !outsideBorders(entity.row, entity.col) && entityMap[entity.row][entity.col] == entity;
 	}
 
 	/*
@@ -397,8 +1497,10 @@ public final class Board extends Pane {
 	protected BoardEntity selectEntity(BoardEntity entity) {
 		if (entity == selectedEntity)
 			return selectedEntity;
-		if (entity != null)
+		if (entity != null) {
 			entity.select();
+			redraw(entity);
+		}
 
 		BoardEntity currEntity = unselectEntity();
 		selectedEntity = entity;
@@ -410,8 +1512,10 @@ public final class Board extends Pane {
 	}
 
 	protected BoardEntity unselectEntity() {
-		if (selectedEntity != null)
+		if (selectedEntity != null) {
 			selectedEntity.deselect();
+			redraw(selectedEntity);
+		}
 		BoardEntity currEntity = selectedEntity;
 		selectedEntity = null;
 		return currEntity;
@@ -423,64 +1527,16 @@ public final class Board extends Pane {
 
 	protected void handleEntityClicked(MouseEvent event, BoardEntity clickedEntity) {
 
-		if (isPieceQueued()) {
-			if (clickedEntity.getType() == Type.UNCLAIMED_TOWER) {
-				Type towerType;
-				Team team;
-				switch (queuedPiece.getType()) {
-				case BLUE_PIECE:
-					towerType = Type.BLUE_TOWER;
-					team = Team.BLUE;
-					break;
-				case RED_PIECE:
-					towerType = Type.RED_TOWER;
-					team = Team.RED;
-					break;
-				case WHITE_PIECE:
-					towerType = Type.WHITE_TOWER;
-					team = Team.WHITE;
-				default:
-					towerType = Type.UNCLAIMED_TOWER;
-					team = Team.RED;
-					break;
-				}
-				put(new BoardEntity(towerType), getRow(clickedEntity), getCol(clickedEntity));
-				unQueuePiece();
-				selectTeam(team);
-			}
-		} else if (getSelectedEntity() == clickedEntity)
-			unselectEntity();
-		else if (isEntitySelected()) {
-
-			BoardEntity selectedEntity = getSelectedEntity();
-
-			if (selectedEntity.getType().isTower()) {
-				Type pieceType;
-				switch (selectedEntity.getType()) {
-				case RED_TOWER:
-					pieceType = Type.RED_PIECE;
-					break;
-				case BLUE_TOWER:
-					pieceType = Type.BLUE_PIECE;
-					break;
-				case WHITE_TOWER:
-					pieceType = Type.WHITE_PIECE;
-					break;
-				// Should never happen
-				default:
-					pieceType = Type.UNCLAIMED_TOWER;
-				}
-				put(new BoardEntity(Type.UNCLAIMED_TOWER), getRow(selectedEntity), getCol(selectedEntity));
-				put(new BoardEntity(pieceType), getRow(clickedEntity), getCol(clickedEntity));
-			} else {
-				put(getSelectedEntity(), getRow(clickedEntity), getCol(clickedEntity));
-			}
-			nextTurn();
+		int cell = state.cell(getRow(clickedEntity), getCol(clickedEntity));
+		if (isPieceQueued())
+			tryMove(Moves.of(Moves.CLAIM, cell, cell));
+		else if (getSelectedEntity() == clickedEntity)
 			unselectEntity();
-		} else
-			for (BoardEntity.Type be_t : getCurrentTeam().getBoardEntityTypes())
-				if (be_t == clickedEntity.getType())
-					selectEntity(clickedEntity);
+		else if (isEntitySelected() && tryMove(getSelectedMove(cell)))
+			return;
+		else if (isOnCurrentTeam(clickedEntity))
+			// Clicking another of the team's own entities switches the selection to it.
+			selectEntity(clickedEntity);
 
 	}
 
@@ -490,37 +1546,41 @@ public final class Board extends Pane {
 
 	protected void handleBoardClicked(MouseEvent event, int row, int col) {
 
+		int cell = state.cell(row, col);
 		if (hasEntity(row, col))// Handled in #handleEntityClicked(...)
 			return;
-		else if (isPieceQueued()) {
-			BoardEntity unqueuedPiece = unQueuePiece();
-			put(unqueuedPiece, row, col);
-			unqueuedPiece.selectTeam(getCurrentTeam());
-		} else if (isEntitySelected()) {
-			if (getSelectedEntity().getType().isTower()) {
-				Type piece;
-				switch (getSelectedEntity().getType()) {
-				case RED_TOWER:
-					piece = Type.RED_PIECE;
-					break;
-				case BLUE_TOWER:
-					piece = Type.BLUE_PIECE;
-					break;
-				case WHITE_TOWER:
-					piece = Type.WHITE_PIECE;
-					break;
-				// Should never happen
-				default:
-					piece = Type.UNCLAIMED_TOWER;
-				}
-				put(new BoardEntity(Type.UNCLAIMED_TOWER), getRow(getSelectedEntity()), getCol(getSelectedEntity()));
-				put(new BoardEntity(piece), row, col);
-			} else
-				put(getSelectedEntity(), row, col);
-			unselectEntity();
-			nextTurn();
-		}
+		else if (isPieceQueued())
+			tryMove(Moves.of(Moves.PLACE, cell, cell));
+		else if (isEntitySelected())
+			tryMove(getSelectedMove(cell));
+
+	}
+
+	private boolean isOnCurrentTeam(BoardEntity entity) {
+		return BoardState.teamOf(entity.getType().code()) == state.getCurrentTeam();
+	}
+
+	/**
+	 * @return The move that the selected entity would make to get to the given
+	 *         cell: a spawn if it's a tower, otherwise a move.
+	 */
+	private long getSelectedMove(int cell) {
+		BoardEntity selected = getSelectedEntity();
+		return Moves.of(selected.getType().isTower() ? Moves.SPAWN : Moves.MOVE,
+				state.cell(getRow(selected), getCol(selected)), cell);
+	}
 
+	/**
+	 * Makes the given move if the rules allow it. When playing over a network, the
+	 * move is sent to the server instead (see {@link #setClient(GameClient)}).
+	 * 
+	 * @return Whether the move was made or sent.
+	 */
+	protected boolean tryMove(long move) {
+		if (!MoveGenerator.forSize(getBoardSize()).isLegal(state, move))
+			return false;
+		submitMove(move);
+		return true;
 	}
 
 }
@@ -2,22 +2,14 @@ package org.alixia.games.diplomacy;
 
 import org.alixia.games.diplomacy.Board.Team;
 
-import javafx.scene.Node;
 import javafx.scene.effect.DropShadow;
 import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
 import javafx.scene.paint.Color;
 
 public final class BoardEntity {
 
 	private static final DropShadow DEFAULT_SELECTION_EFFECT = new DropShadow(80, Color.GOLD);
 
-	/**
-	 * Used to determine if any arbitrarily obtained {@link ImageView} belongs to a
-	 * {@link BoardEntity}.
-	 */
-	private static final Object BOARD_ENTITY_IMAGE_VIEW_KEY = new Object();
-
 	public enum Type {
 		RED_PIECE("pieces/red_piece.png"), BLUE_PIECE("pieces/blue_piece.png"), WHITE_PIECE(
 				"pieces/white_piece.png"), RED_TOWER("towers/red_tower.png", true), BLUE_TOWER("towers/blue_tower.png",
@@ -28,43 +20,66 @@ public final class BoardEntity {
 		}
 
 		private Type(String subLoc, boolean tower) {
-			image = new Image("/org/alixia/games/diplomacy/_resources/graphics/" + subLoc);
+			path = subLoc;
 			this.tower = tower;
 		}
 
 		private final boolean tower;
-
-		private Type(Image image) {
-			this.image = image;
-			tower = false;
-		}
+		/**
+		 * Where this type's image is, relative to the graphics folder. Images are
+		 * loaded by the {@link ResourceManager}, not when the type is.
+		 */
+		private final String path;
 
 		public boolean isTower() {
 			return tower;
 		}
 
-		private final Image image;
+		/**
+		 * @return This type's code in a {@link BoardState}.
+		 */
+		public int code() {
+			return ordinal() + 1;
+		}
+
+		public static Type fromCode(int code) {
+			return values()[code - 1];
+		}
+
+		String getPath() {
+			return path;
+		}
+
+		Image getImage() {
+			return ResourceManager.getImage(path);
+		}
 	}
 
 	public BoardEntity(Type type) {
 		this.type = type;
-		icon.setImage(type.image);
 	}
 
 	private final Type type;
-	protected final ImageView icon = new ImageView();
 
-	{
-		icon.getProperties().put(BOARD_ENTITY_IMAGE_VIEW_KEY, this);
-	}
+	/**
+	 * The position of this entity on the {@link Board} that it was last put on.
+	 * These are maintained by the board so that looking an entity up doesn't
+	 * require scanning the whole grid. Both are <code>-1</code> when the entity is
+	 * not on a board.
+	 */
+	int row = -1, col = -1;
 
-	public static boolean isBoardEntityImageView(ImageView n) {
-		return n.getProperties().containsKey(BOARD_ENTITY_IMAGE_VIEW_KEY);
-	}
+	/**
+	 * This entity's indices in its {@link Board}'s list of all entities and its
+	 * list of its team's entities, or <code>-1</code> when it isn't in them.
+	 */
+	int boardIndex = -1, teamIndex = -1;
 
-	public static BoardEntity getBoardEntity(Node n) throws ClassCastException {
-		return (BoardEntity) n.getProperties().get(BOARD_ENTITY_IMAGE_VIEW_KEY);
-	}
+	/**
+	 * Whether this entity was made by an {@link EntityPool}, and so may be given
+	 * back to one. Entities made by anything else are never recycled.
+	 */
+	boolean pooled;
 
 	public Type getType() {
 		return type;
@@ -73,33 +88,78 @@ public final class BoardEntity {
 	private Team team;
 	private boolean selected;
 
+	/**
+	 * Puts this entity back the way it was when it was made, so that it can be
+	 * reused (see {@link EntityPool}).
+	 */
+	void reset() {
+		team = null;
+		selected = false;
+		row = col = boardIndex = teamIndex = -1;
+	}
+
 	public void select() {
 		selected = true;
-		updateEffects();
 	}
 
 	void selectTeam(Team team) {
 		this.team = team;
-		updateEffects();
 	}
 
 	void deselectTeam() {
 		team = null;
-		updateEffects();
 	}
 
 	void deselect() {
 		selected = false;
-		updateEffects();
 	}
 
-	private void updateEffects() {
-		if (selected)
-			icon.setEffect(DEFAULT_SELECTION_EFFECT);
-		else if (team != null)
-			icon.setEffect(team.getSelectionEffect());
-		else
-			icon.setEffect(null);
+	/**
+	 * Glows are drawn into pre-rendered sprites (see {@link SpriteCache}) rather
+	 * than applied as live effects, so an entity only records which glow it
+	 * should have. This is <code>0</code> for none, <code>1</code> for the
+	 * selection glow, or <code>2</code> plus a team's ordinal for that team's glow.
+	 */
+	int getGlow() {
+		return selected ? 1 : team != null ? 2 + team.ordinal() : 0;
 	}
 
+	/**
+	 * How many cells past an entity's edges its glow may reach. Glows are made
+	 * smaller than they normally are on boards with small enough cells, so that
+	 * they don't cover the board.
+	 */
+	private static final double MAX_GLOW_CELLS = 1.25;
+
+	/**
+	 * @return The effect that the glow with the given number (see
+	 *         {@link #getGlow()}) looks like on an entity in a cell of the given
+	 *         size, or <code>null</code> for no glow.
+	 */
+	static DropShadow getGlowEffect(int glow, double cellSize) {
+		DropShadow effect = glow == 0 ? null
+				: glow == 1 ? DEFAULT_SELECTION_EFFECT : Team.values()[glow - 2].getSelectionEffect();
+		return effect == null || effect.getRadius() <= cellSize * MAX_GLOW_CELLS ? effect
+				: new DropShadow(cellSize * MAX_GLOW_CELLS, effect.getColor());
+	}
+
+	/**
+	 * @return How far past the edges of an entity in a cell of the given size the
+	 *         widest glow can reach.
+	 */
+	static double getMaxGlowRadius(double cellSize) {
+		double radius = DEFAULT_SELECTION_EFFECT.getRadius();
+		for (Team team : Team.values())
+			radius = Math.max(radius, team.getSelectionEffect().getRadius());
+		return Math.min(radius, cellSize * MAX_GLOW_CELLS);
+	}
+
+	/**
+	 * The sprite that this entity was last drawn with, and the key it was looked up
+	 * by, so that redrawing an entity whose glow and size haven't changed doesn't
+	 * need to touch the {@link SpriteCache}.
+	 */
+	long spriteKey = -1;
+	SpriteCache.Sprite sprite;
+
 }
@@ -0,0 +1,248 @@
+package org.alixia.games.diplomacy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Every version of a {@link BoardState} that a game has been through, for
+ * undoing and redoing moves.
+ * <p>
+ * Each {@link Version} keeps its cells in a trie: the cells are split into
+ * chunks of {@link #CHUNK_SIZE}, which are the leaves, and the leaves are held
+ * by nodes of {@link #BRANCHES} children each. Versions are never changed.
+ * Recording a move copies only the leaves that the move changed and the nodes
+ * above them, and shares everything else with the version before it, so each
+ * move costs a few hundred bytes however large the board is. For the same
+ * reason, two versions are compared by walking down only the parts of their
+ * tries that aren't the same objects, which is how undoing and redoing find
+ * the cells that they need to change.
+ * <p>
+ * Versions can be kept and gone back to with {@link #checkout(Version,
+ * BoardState)}, to branch off and try other moves from any point.
+ */
+public final class BoardHistory {
+
+	private static final int CHUNK_BITS = 6, CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int BRANCH_BITS = 5, BRANCHES = 1 << BRANCH_BITS;
+
+	/**
+	 * A board as it was at some point. Only the {@link BoardHistory} that made a
+	 * version can read it.
+	 */
+	public static final class Version {
+		/**
+		 * Either a <code>byte[]</code> of cells, if the board fits in one chunk, or
+		 * an <code>Object[]</code> of child nodes.
+		 */
+		private final Object root;
+		private final int currentTeam, queued;
+		private final boolean placing;
+
+		private Version(Object root, BoardState state) {
+			this.root = root;
+			currentTeam = state.getCurrentTeam();
+			queued = state.getQueued();
+			placing = state.isPlacing();
+		}
+	}
+
+	private final int size, cellCount, chunkCount;
+	/**
+	 * How many levels of nodes are above the leaves.
+	 */
+	private final int depth;
+
+	private final List<Version> versions = new ArrayList<>();
+	/**
+	 * The index, in {@link #versions}, of the version that the board is at.
+	 * Versions after it can be redone.
+	 */
+	private int current;
+
+	/**
+	 * Where changed cells are collected while comparing versions.
+	 */
+	private int[] changed = new int[16];
+	private int changedCount;
+
+	/**
+	 * Starts a history whose first version is the given game.
+	 */
+	public BoardHistory(BoardState state) {
+		size = state.getSize();
+		cellCount = state.getCellCount();
+		chunkCount = (cellCount + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+		int depth = 0;
+		for (long span = 1; span < chunkCount; span <<= BRANCH_BITS)
+			depth++;
+		this.depth = depth;
+		versions.add(new Version(build(state, depth, 0), state));
+	}
+
+	private Object build(BoardState state, int level, int firstChunk) {
+		if (level == 0) {
+			byte[] chunk = new byte[CHUNK_SIZE];
+			for (int i = 0, cell = firstChunk << CHUNK_BITS; i < CHUNK_SIZE && cell < cellCount; i++, cell++)
+				chunk[i] = (byte) state.get(cell);
+			return chunk;
+		}
+		Object[] node = new Object[BRANCHES];
+		int span = 1 << BRANCH_BITS * (level - 1);
+		for (int i = 0; i < BRANCHES && firstChunk + i * span < chunkCount; i++)
+			node[i] = build(state, level - 1, firstChunk + i * span);
+		return node;
+	}
+
+	/**
+	 * @return A copy of <code>node</code>, or of the node under it that holds
+	 *         <code>cell</code>, with <code>cell</code> set to <code>type</code>.
+	 *         Every node not on the path to <code>cell</code> is shared.
+	 */
+	private static Object set(Object node, int level, int cell, int type) {
+		if (level == 0) {
+			byte[] chunk = ((byte[]) node).clone();
+			chunk[cell & CHUNK_SIZE - 1] = (byte) type;
+			return chunk;
+		}
+		Object[] copy = ((Object[]) node).clone();
+		int child = (cell >>> CHUNK_BITS + BRANCH_BITS * (level - 1)) & BRANCHES - 1;
+		copy[child] = set(copy[child], level - 1, cell, type);
+		return copy;
+	}
+
+	private int get(Version version, int cell) {
+		Object node = version.root;
+		for (int level = depth; level > 0; level--)
+			node = ((Object[]) node)[(cell >>> CHUNK_BITS + BRANCH_BITS * (level - 1)) & BRANCHES - 1];
+		return ((byte[]) node)[cell & CHUNK_SIZE - 1];
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return The version that the board is at.
+	 */
+	public Version getVersion() {
+		return versions.get(current);
+	}
+
+	/**
+	 * Records the game as it is after a move, as a new version after the current
+	 * one. Any versions that could have been redone are dropped.
+	 *
+	 * @param cells
+	 *            Every cell that the move changed. Other cells are assumed to be
+	 *            as they were in the current version.
+	 */
+	public void push(BoardState state, int... cells) {
+		Object root = getVersion().root;
+		for (int cell : cells)
+			if (get(getVersion(), cell) != state.get(cell))
+				root = set(root, depth, cell, state.get(cell));
+		add(new Version(root, state));
+	}
+
+	/**
+	 * Records the game as it is after the given move, as encoded by
+	 * {@link Moves}, was made.
+	 */
+	public void push(BoardState state, long move) {
+		if (move == Moves.PASS)
+			push(state);
+		else if (Moves.kind(move) == Moves.MOVE || Moves.kind(move) == Moves.SPAWN)
+			push(state, Moves.from(move), Moves.to(move));
+		else
+			push(state, Moves.to(move));
+	}
+
+	private void add(Version version) {
+		versions.subList(current + 1, versions.size()).clear();
+		versions.add(version);
+		current++;
+	}
+
+	public boolean canUndo() {
+		return current > 0;
+	}
+
+	public boolean canRedo() {
+		return current < versions.size() - 1;
+	}
+
+	/**
+	 * Puts the game back to the version before the current one.
+	 *
+	 * @return The cells that were changed.
+	 */
+	public int[] undo(BoardState state) {
+		if (!canUndo())
+			throw new IllegalStateException("Nothing to undo.");
+		return restore(versions.get(current), versions.get(--current), state);
+	}
+
+	/**
+	 * Puts the game forward to the version after the current one.
+	 *
+	 * @return The cells that were changed.
+	 */
+	public int[] redo(BoardState state) {
+		if (!canRedo())
+			throw new IllegalStateException("Nothing to redo.");
+		return restore(versions.get(current), versions.get(++current), state);
+	}
+
+	/**
+	 * Puts the game into the given version, which is recorded as a new version
+	 * after the current one (so this can be undone too). Any versions that could
+	 * have been redone are dropped.
+	 *
+	 * @param version
+	 *            A version from this history, possibly from a branch that has
+	 *            since been dropped.
+	 * @return The cells that were changed.
+	 */
+	public int[] checkout(Version version, BoardState state) {
+		int[] cells = restore(getVersion(), version, state);
+		add(version);
+		return cells;
+	}
+
+	private int[] restore(Version from, Version to, BoardState state) {
+		changedCount = 0;
+		diff(from.root, to.root, depth, 0);
+		int[] cells = Arrays.copyOf(changed, changedCount);
+		for (int cell : cells)
+			state.put(get(to, cell), cell);
+		state.setCurrentTeam(to.currentTeam);
+		state.queue(to.queued);
+		state.setPlacing(to.placing);
+		return cells;
+	}
+
+	/**
+	 * Adds every cell that differs between two nodes to {@link #changed}. Nodes
+	 * that are the same object are skipped without being looked into.
+	 */
+	private void diff(Object a, Object b, int level, int firstCell) {
+		if (a == b)
+			return;
+		if (level == 0) {
+			byte[] x = (byte[]) a, y = (byte[]) b;
+			for (int i = 0; i < CHUNK_SIZE; i++)
+				if (x[i] != y[i]) {
+					if (changedCount == changed.length)
+						changed = Arrays.copyOf(changed, changedCount * 2);
+					changed[changedCount++] = firstCell + i;
+				}
+			return;
+		}
+		Object[] x = (Object[]) a, y = (Object[]) b;
+		int span = 1 << CHUNK_BITS + BRANCH_BITS * (level - 1);
+		for (int i = 0; i < BRANCHES; i++)
+			diff(x[i], y[i], level - 1, firstCell + i * span);
+	}
+
+}
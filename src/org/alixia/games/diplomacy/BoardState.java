@@ -0,0 +1,451 @@
+package org.alixia.games.diplomacy;
+
+import java.util.Arrays;
+
+/**
+ * The rules and state of a game of Diplomacy, without anything graphical.
+ * <p>
+ * Cells are addressed by a single index, <code>row * size + col</code>. Every
+ * cell holds a type code (one of the constants below, which are in the same
+ * order as {@link BoardEntity.Type}, offset by one so that <code>0</code> can
+ * mean empty). The board is stored twice: once as a flat <code>byte</code> per
+ * cell for direct lookups, and once as a bitboard per type code and per team
+ * for scanning. Teams are referred to by their {@link Board.Team} ordinals.
+ * <p>
+ * None of the mutators allocate, so a {@link BoardState} can be used to play
+ * out games as fast as the rules can be applied, with no FX toolkit running.
+ * <p>
+ * Each state also keeps a Zobrist hash of its cells, updated as cells change,
+ * which {@link #hash()} combines with the current team and queued piece so that
+ * positions can be looked up in a {@link TranspositionTable}.
+ */
+public final class BoardState {
+
+	public static final int EMPTY = 0, RED_PIECE = 1, BLUE_PIECE = 2, WHITE_PIECE = 3, RED_TOWER = 4,
+			BLUE_TOWER = 5, WHITE_TOWER = 6, UNCLAIMED_TOWER = 7;
+	public static final int TYPE_CODE_COUNT = 8;
+
+	public static final int NO_TEAM = -1, RED = 0, WHITE = 1, BLUE = 2;
+	public static final int TEAM_COUNT = 3;
+
+	private static final String[] TEAM_NAMES = { "RED", "WHITE", "BLUE" };
+
+	private static final int[] TEAM_OF = { NO_TEAM, RED, BLUE, WHITE, RED, BLUE, WHITE, NO_TEAM },
+			PIECE_OF = { RED_PIECE, WHITE_PIECE, BLUE_PIECE }, TOWER_OF = { RED_TOWER, WHITE_TOWER, BLUE_TOWER };
+
+	public static int teamOf(int type) {
+		return TEAM_OF[type];
+	}
+
+	/**
+	 * @return The name of the given team, matching the {@link Board.Team} constant
+	 *         with the same ordinal.
+	 */
+	public static String teamName(int team) {
+		return TEAM_NAMES[team];
+	}
+
+	public static int pieceOf(int team) {
+		return PIECE_OF[team];
+	}
+
+	public static int towerOf(int team) {
+		return TOWER_OF[team];
+	}
+
+	public static boolean isTower(int type) {
+		return type >= RED_TOWER;
+	}
+
+	public static boolean isPiece(int type) {
+		return type != EMPTY && type < RED_TOWER;
+	}
+
+	/**
+	 * Keys for the parts of a position that aren't cells. Cell keys are computed
+	 * from the cell and type instead of being stored, since a table of them would
+	 * be many times larger than the board itself on big boards.
+	 */
+	private static final long[] TEAM_KEYS = new long[TEAM_COUNT + 1], QUEUED_KEYS = new long[TYPE_CODE_COUNT];
+	private static final long PLACING_KEY = mix(0x5EED_0003L), CELL_KEY_SEED = 0x5EED_0000_0000L;
+
+	static {
+		for (int i = 0; i < TEAM_KEYS.length; i++)
+			TEAM_KEYS[i] = mix(0x5EED_0001_0000L + i);
+		for (int i = 1; i < QUEUED_KEYS.length; i++)
+			QUEUED_KEYS[i] = mix(0x5EED_0002_0000L + i);
+	}
+
+	/**
+	 * The SplitMix64 finalizer, which spreads every bit of its input across the
+	 * whole output.
+	 */
+	static long mix(long z) {
+		z = (z ^ z >>> 30) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ z >>> 27) * 0x94D049BB133111EBL;
+		return z ^ z >>> 31;
+	}
+
+	private static long cellKey(int cell, int type) {
+		return mix(CELL_KEY_SEED + (long) cell * TYPE_CODE_COUNT + type);
+	}
+
+	private final int size, cellCount;
+	private final byte[] cells;
+	private final long[][] typeBoards, teamBoards;
+	private final int[] counts = new int[TYPE_CODE_COUNT];
+
+	private int currentTeam = NO_TEAM, queued = EMPTY;
+	private boolean placing;
+	private long cellHash;
+
+	public BoardState(int size) {
+		if (size < 2)
+			throw new IllegalArgumentException("Board size must be at least 2.");
+		this.size = size;
+		cellCount = size * size;
+		cells = new byte[cellCount];
+		int words = (cellCount + 63) >>> 6;
+		typeBoards = new long[TYPE_CODE_COUNT][words];
+		teamBoards = new long[TEAM_COUNT][words];
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public int getCellCount() {
+		return cellCount;
+	}
+
+	public int cell(int row, int col) {
+		return row * size + col;
+	}
+
+	public int row(int cell) {
+		return cell / size;
+	}
+
+	public int col(int cell) {
+		return cell % size;
+	}
+
+	public int get(int cell) {
+		return cells[cell];
+	}
+
+	public int count(int type) {
+		return counts[type];
+	}
+
+	/**
+	 * @return The Zobrist hash of this position: every cell's contents, whose turn
+	 *         it is, the queued piece, and whether pieces are being placed yet.
+	 */
+	public long hash() {
+		return cellHash ^ TEAM_KEYS[currentTeam + 1] ^ QUEUED_KEYS[queued] ^ (placing ? PLACING_KEY : 0);
+	}
+
+	/**
+	 * @return The bitboard of every cell holding the given type code. Bit
+	 *         <code>cell &amp; 63</code> of word <code>cell &gt;&gt;&gt; 6</code>
+	 *         is set for each such cell. This is the live array; don't modify it.
+	 */
+	long[] typeBoard(int type) {
+		return typeBoards[type];
+	}
+
+	/**
+	 * @return The bitboard of every cell holding a piece or tower belonging to the
+	 *         given team. This is the live array; don't modify it.
+	 */
+	long[] teamBoard(int team) {
+		return teamBoards[team];
+	}
+
+	/**
+	 * Sets the contents of a cell.
+	 *
+	 * @param type
+	 *            The type code to store, or {@link #EMPTY} to clear the cell.
+	 * @param cell
+	 *            The cell to modify.
+	 * @return The type code that was previously in the cell.
+	 */
+	public int put(int type, int cell) {
+		int previous = cells[cell];
+		if (previous == type)
+			return previous;
+		int word = cell >>> 6;
+		long bit = 1L << cell;
+		if (previous != EMPTY) {
+			cellHash ^= cellKey(cell, previous);
+			typeBoards[previous][word] &= ~bit;
+			counts[previous]--;
+			if (TEAM_OF[previous] != NO_TEAM)
+				teamBoards[TEAM_OF[previous]][word] &= ~bit;
+		}
+		cells[cell] = (byte) type;
+		if (type != EMPTY) {
+			cellHash ^= cellKey(cell, type);
+			typeBoards[type][word] |= bit;
+			counts[type]++;
+			if (TEAM_OF[type] != NO_TEAM)
+				teamBoards[TEAM_OF[type]][word] |= bit;
+		}
+		return previous;
+	}
+
+	public int remove(int cell) {
+		return put(EMPTY, cell);
+	}
+
+	/**
+	 * Moves whatever is in <code>from</code> to <code>to</code>, replacing what
+	 * was there.
+	 *
+	 * @return The type code that was replaced at <code>to</code>.
+	 */
+	public int move(int from, int to) {
+		return put(remove(from), to);
+	}
+
+	/**
+	 * Spends the tower at <code>tower</code>, which becomes unclaimed, to put a
+	 * new piece of its team at <code>to</code>.
+	 *
+	 * @return The type code that was replaced at <code>to</code>.
+	 */
+	public int spawn(int tower, int to) {
+		int team = TEAM_OF[put(UNCLAIMED_TOWER, tower)];
+		return put(PIECE_OF[team], to);
+	}
+
+	/**
+	 * Uses the queued piece to claim the unclaimed tower at <code>cell</code> for
+	 * the queued piece's team.
+	 */
+	public void claim(int cell) {
+		put(TOWER_OF[TEAM_OF[queued]], cell);
+		queued = EMPTY;
+	}
+
+	/**
+	 * Puts the queued piece down at <code>cell</code>.
+	 *
+	 * @return The type code that was replaced at <code>cell</code>.
+	 */
+	public int place(int cell) {
+		int piece = queued;
+		queued = EMPTY;
+		return put(piece, cell);
+	}
+
+	public int getQueued() {
+		return queued;
+	}
+
+	public boolean isPieceQueued() {
+		return queued != EMPTY;
+	}
+
+	public void queue(int piece) {
+		queued = piece;
+	}
+
+	public int unqueue() {
+		int piece = queued;
+		queued = EMPTY;
+		return piece;
+	}
+
+	public int getCurrentTeam() {
+		return currentTeam;
+	}
+
+	public void setCurrentTeam(int team) {
+		currentTeam = team;
+	}
+
+	/**
+	 * @return Whether the first round has finished, after which every team gets a
+	 *         new piece to place at the start of each of its turns.
+	 */
+	public boolean isPlacing() {
+		return placing;
+	}
+
+	public void setPlacing(boolean placing) {
+		this.placing = placing;
+	}
+
+	/**
+	 * Passes the turn to the next team. Red goes first, then white, then blue.
+	 * Once every team has had a turn, each new turn starts with a piece queued for
+	 * the team to place.
+	 */
+	public void nextTurn() {
+		if (currentTeam == NO_TEAM) {
+			currentTeam = RED;
+			return;
+		}
+		if (++currentTeam == TEAM_COUNT) {
+			currentTeam = RED;
+			placing = true;
+		}
+		if (placing)
+			queued = PIECE_OF[currentTeam];
+	}
+
+	/**
+	 * Makes a move, as encoded by {@link Moves}, for the current team. Moving a
+	 * piece or spawning from a tower passes the turn on to the next team.
+	 * 
+	 * @return A token that can be given to {@link #undo(long, long)}, along with
+	 *         the move, to take the move back.
+	 */
+	public long apply(long move) {
+		long token = (placing ? 1 : 0) << 11 | (long) (currentTeam + 1) << 9 | queued << 6;
+		if (move == Moves.PASS) {
+			pass();
+			return token;
+		}
+
+		int from = Moves.from(move), to = Moves.to(move);
+		switch (Moves.kind(move)) {
+		case Moves.MOVE:
+			token |= move(from, to);
+			nextTurn();
+			break;
+		case Moves.SPAWN:
+			token |= cells[from] << 3;
+			token |= spawn(from, to);
+			nextTurn();
+			break;
+		case Moves.CLAIM:
+			token |= put(TOWER_OF[TEAM_OF[queued]], to);
+			queued = EMPTY;
+			break;
+		case Moves.PLACE:
+			token |= place(to);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown move kind: " + Moves.kind(move));
+		}
+		return token;
+	}
+
+	/**
+	 * Takes back a move made with {@link #apply(long)}. Moves must be undone in the
+	 * reverse of the order they were made in.
+	 * 
+	 * @param move
+	 *            The move to take back.
+	 * @param token
+	 *            What {@link #apply(long)} returned when the move was made.
+	 */
+	public void undo(long move, long token) {
+		if (move != Moves.PASS) {
+			int from = Moves.from(move), to = Moves.to(move), replaced = (int) (token & 7);
+			switch (Moves.kind(move)) {
+			case Moves.MOVE:
+				put(cells[to], from);
+				break;
+			case Moves.SPAWN:
+				put((int) (token >>> 3 & 7), from);
+				break;
+			}
+			put(replaced, to);
+		}
+		queued = (int) (token >>> 6 & 7);
+		currentTeam = (int) (token >>> 9 & 3) - 1;
+		placing = (token >>> 11 & 1) != 0;
+	}
+
+	/**
+	 * Gives up the rest of the current team's turn, discarding its queued piece if
+	 * it has one. This is for teams that have no moves available.
+	 */
+	public void pass() {
+		queued = EMPTY;
+		nextTurn();
+	}
+
+	/**
+	 * @return How well the given team is doing. Each piece is worth one point and
+	 *         each tower is worth three, since a tower can keep producing pieces.
+	 */
+	public int score(int team) {
+		return counts[PIECE_OF[team]] + 3 * counts[TOWER_OF[team]];
+	}
+
+	/**
+	 * @return How many teams have at least one piece or tower on the board.
+	 */
+	public int teamsRemaining() {
+		int remaining = 0;
+		for (int team = 0; team < TEAM_COUNT; team++)
+			if (counts[PIECE_OF[team]] + counts[TOWER_OF[team]] != 0)
+				remaining++;
+		return remaining;
+	}
+
+	/**
+	 * Clears the board and sets up each team's starting tower and pieces in its
+	 * corner. This does not start the first turn.
+	 */
+	public void setup() {
+		clear();
+		int last = size - 1;
+
+		put(BLUE_TOWER, cell(0, 0));
+		put(BLUE_PIECE, cell(0, 1));
+		put(BLUE_PIECE, cell(1, 0));
+
+		put(WHITE_TOWER, cell(last, 0));
+		put(WHITE_PIECE, cell(last - 1, 0));
+		put(WHITE_PIECE, cell(last, 1));
+
+		put(RED_TOWER, cell(last, last));
+		put(RED_PIECE, cell(last - 1, last));
+		put(RED_PIECE, cell(last, last - 1));
+	}
+
+	public void clear() {
+		Arrays.fill(cells, (byte) EMPTY);
+		for (long[] board : typeBoards)
+			Arrays.fill(board, 0);
+		for (long[] board : teamBoards)
+			Arrays.fill(board, 0);
+		Arrays.fill(counts, 0);
+		cellHash = 0;
+		currentTeam = NO_TEAM;
+		queued = EMPTY;
+		placing = false;
+	}
+
+	public BoardState copy() {
+		BoardState copy = new BoardState(size);
+		copy.copyFrom(this);
+		return copy;
+	}
+
+	/**
+	 * Makes this state an exact copy of another state of the same size.
+	 */
+	public void copyFrom(BoardState other) {
+		if (other.size != size)
+			throw new IllegalArgumentException("Board sizes differ.");
+		System.arraycopy(other.cells, 0, cells, 0, cellCount);
+		for (int i = 0; i < TYPE_CODE_COUNT; i++)
+			System.arraycopy(other.typeBoards[i], 0, typeBoards[i], 0, typeBoards[i].length);
+		for (int i = 0; i < TEAM_COUNT; i++)
+			System.arraycopy(other.teamBoards[i], 0, teamBoards[i], 0, teamBoards[i].length);
+		System.arraycopy(other.counts, 0, counts, 0, TYPE_CODE_COUNT);
+		cellHash = other.cellHash;
+		currentTeam = other.currentTeam;
+		queued = other.queued;
+		placing = other.placing;
+	}
+
+}
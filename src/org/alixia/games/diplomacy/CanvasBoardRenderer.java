@@ -0,0 +1,211 @@
+package org.alixia.games.diplomacy;
+
+import java.util.List;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+
+/**
+ * Draws the part of a {@link Board} in its viewport onto a single
+ * {@link Canvas}, instead of having a node in the scene graph for every entity.
+ * Only the cells that have been marked as dirty since the last render are
+ * redrawn, each one clipped to its own bounds: the part of the background that
+ * lies under the cell, the grid lines crossing it, the part of every overlay
+ * over it, then the sprite of every entity close enough for its glow to reach
+ * into the cell. When the whole viewport needs to be redrawn, or enough of it
+ * that redrawing each cell would cost more (see {@link #FULL_REDRAW_FRACTION}),
+ * it's drawn in one go instead, so that large boards don't need a pass per
+ * cell.
+ */
+final class CanvasBoardRenderer {
+
+	/**
+	 * Once more than this fraction of the cells in view are dirty, the whole view
+	 * is redrawn instead of cell by cell, and once more than this fraction of all
+	 * of the board's cells are, dirty cells stop being tracked.
+	 */
+	private static final int FULL_REDRAW_FRACTION = 4;
+
+	private final Board board;
+	private final Canvas canvas = new Canvas();
+	private final ImageView background;
+	private final ImageView[] overlays;
+
+	private final boolean[] dirty;
+	private final int[] dirtyCells;
+	private int dirtyCount;
+	private boolean allDirty = true;
+
+	/**
+	 * How many cells away an entity's glow can reach, at the size the board was
+	 * last drawn at.
+	 */
+	private int reach = 1;
+
+	/**
+	 * The viewport, and the size of the whole board, as of the current render.
+	 */
+	private double viewX, viewY, viewWidth, viewHeight, boardWidth, boardHeight;
+
+	/**
+	 * @param board
+	 *            The board to draw.
+	 * @param background
+	 *            The image under the grid.
+	 * @param overlays
+	 *            The images over the grid, bottom first.
+	 *            <p>
+	 *            All of these cover the whole board, and are drawn stretched over
+	 *            it with their views' opacity.
+	 */
+	CanvasBoardRenderer(Board board, ImageView background, ImageView... overlays) {
+		this.board = board;
+		this.background = background;
+		this.overlays = overlays;
+		int cells = board.getBoardSize() * board.getBoardSize();
+		dirty = new boolean[cells];
+		dirtyCells = new int[cells];
+	}
+
+	Canvas getCanvas() {
+		return canvas;
+	}
+
+	/**
+	 * Marks a cell as needing to be redrawn, along with every cell that the glow
+	 * of an entity in it could reach.
+	 */
+	void markDirty(int row, int col) {
+		if (allDirty)
+			return;
+		int size = board.getBoardSize();
+		for (int r = Math.max(0, row - reach); r <= Math.min(size - 1, row + reach); r++)
+			for (int c = Math.max(0, col - reach); c <= Math.min(size - 1, col + reach); c++) {
+				int cell = r * size + c;
+				if (!dirty[cell]) {
+					dirty[cell] = true;
+					dirtyCells[dirtyCount++] = cell;
+				}
+			}
+		if (dirtyCount > dirty.length / FULL_REDRAW_FRACTION)
+			allDirty = true;
+	}
+
+	void markAllDirty() {
+		allDirty = true;
+	}
+
+	/**
+	 * Redraws every dirty cell that's in the board's viewport, resizing the canvas
+	 * first (which dirties every cell) if the viewport's size has changed.
+	 */
+	void render(double width, double height) {
+		if (canvas.getWidth() != width || canvas.getHeight() != height) {
+			canvas.setWidth(width);
+			canvas.setHeight(height);
+			allDirty = true;
+		}
+
+		GraphicsContext gc = canvas.getGraphicsContext2D();
+		int size = board.getBoardSize();
+		viewX = board.getViewX();
+		viewY = board.getViewY();
+		viewWidth = width;
+		viewHeight = height;
+		boardWidth = width * board.getZoom();
+		boardHeight = height * board.getZoom();
+		double cellSize = Math.min(boardWidth / size, boardHeight / size);
+		reach = (int) Math.ceil(BoardEntity.getMaxGlowRadius(cellSize) / cellSize);
+
+		// Everything is drawn in the coordinates of the whole board, shifted so that
+		// the viewport lands on the canvas.
+		gc.save();
+		gc.translate(-viewX, -viewY);
+		int visibleCells = (int) Math.min(dirty.length,
+				(Math.ceil(width / (boardWidth / size)) + 1) * (Math.ceil(height / (boardHeight / size)) + 1));
+		if (allDirty || dirtyCount > visibleCells / FULL_REDRAW_FRACTION) {
+			drawBoard(gc);
+			allDirty = false;
+		} else
+			for (int i = 0; i < dirtyCount; i++)
+				drawCell(gc, dirtyCells[i] / size, dirtyCells[i] % size);
+		gc.restore();
+
+		for (int i = 0; i < dirtyCount; i++)
+			dirty[dirtyCells[i]] = false;
+		dirtyCount = 0;
+	}
+
+	private void drawBoard(GraphicsContext gc) {
+		gc.clearRect(viewX, viewY, viewWidth, viewHeight);
+		drawLayers(gc, viewX, viewY, viewWidth, viewHeight);
+		double cellWidth = boardWidth / board.getBoardSize(), cellHeight = boardHeight / board.getBoardSize();
+		List<BoardEntity> entities = board.getVisibleEntities();
+		for (int i = 0; i < entities.size(); i++)
+			drawEntity(gc, entities.get(i), cellWidth, cellHeight);
+	}
+
+	private void drawCell(GraphicsContext gc, int row, int col) {
+		int size = board.getBoardSize();
+		// Cell edges are rounded to whole pixels so that neighboring cells meet
+		// exactly, without antialiased seams between them.
+		double x = Math.floor(col * boardWidth / size), y = Math.floor(row * boardHeight / size),
+				w = Math.floor((col + 1) * boardWidth / size) - x, h = Math.floor((row + 1) * boardHeight / size) - y;
+		if (x >= viewX + viewWidth || y >= viewY + viewHeight || x + w <= viewX || y + h <= viewY)
+			return;
+
+		gc.save();
+		gc.beginPath();
+		gc.rect(x, y, w, h);
+		gc.clip();
+		gc.clearRect(x, y, w, h);
+		drawLayers(gc, x, y, w, h);
+
+		double cellWidth = boardWidth / size, cellHeight = boardHeight / size;
+		for (int r = Math.max(0, row - reach); r <= Math.min(size - 1, row + reach); r++)
+			for (int c = Math.max(0, col - reach); c <= Math.min(size - 1, col + reach); c++) {
+				BoardEntity entity = board.getEntity(r, c);
+				if (entity != null)
+					drawEntity(gc, entity, cellWidth, cellHeight);
+			}
+
+		gc.restore();
+	}
+
+	/**
+	 * Draws the part of the background, grid and overlays within the given
+	 * rectangle.
+	 */
+	private void drawLayers(GraphicsContext gc, double x, double y, double w, double h) {
+		drawLayer(gc, background, x, y, w, h, boardWidth, boardHeight);
+		Grid.draw(gc, board.getBoardSize(), boardWidth, boardHeight, x, y, w, h);
+		for (ImageView overlay : overlays)
+			drawLayer(gc, overlay, x, y, w, h, boardWidth, boardHeight);
+	}
+
+	private static void drawLayer(GraphicsContext gc, ImageView layer, double x, double y, double w, double h,
+			double width, double height) {
+		if (layer.getOpacity() <= 0)
+			return;
+		Image image = layer.getImage();
+		double scaleX = image.getWidth() / width, scaleY = image.getHeight() / height;
+		gc.setGlobalAlpha(layer.getOpacity());
+		gc.drawImage(image, x * scaleX, y * scaleY, w * scaleX, h * scaleY, x, y, w, h);
+		gc.setGlobalAlpha(1);
+	}
+
+	private static void drawEntity(GraphicsContext gc, BoardEntity entity, double cellWidth, double cellHeight) {
+		SpriteCache.Sprite sprite = SpriteCache.get(entity, cellWidth, cellHeight);
+		double padX = sprite.paddingX * cellWidth, padY = sprite.paddingY * cellHeight,
+				x = entity.col * cellWidth - padX, y = entity.row * cellHeight - padY;
+		if (sprite.viewport == null)
+			gc.drawImage(sprite.image, x, y, cellWidth + 2 * padX, cellHeight + 2 * padY);
+		else
+			gc.drawImage(sprite.image, sprite.viewport.getMinX(), sprite.viewport.getMinY(),
+					sprite.viewport.getWidth(), sprite.viewport.getHeight(), x, y, cellWidth + 2 * padX,
+					cellHeight + 2 * padY);
+	}
+
+}
@@ -0,0 +1,173 @@
+package org.alixia.games.diplomacy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Everything that changed on a {@link Board} in one turn: each cell whose type
+ * changed, with its type before and after the turn, and the team, queued piece
+ * and placing flag that the board was left with. A cell that changed more than
+ * once in the turn is only listed once, and a cell that changed back to what it
+ * was isn't listed at all.
+ * <p>
+ * Frames are numbered one after another by the board that made them, so a
+ * reader can tell if it missed any. A frame is encoded, by {@link #encode()},
+ * at most once, and the encoding is shared by everything that sends it.
+ */
+public final class ChangeFrame {
+
+	/**
+	 * The first byte of an encoded frame, and of an encoded snapshot (a
+	 * {@link #getSequence() sequence number} followed by a {@link PackedBoard}),
+	 * respectively.
+	 */
+	public static final byte DELTA = 1, SNAPSHOT = 2;
+
+	private final long sequence;
+	private final int[] cells;
+	/**
+	 * Each cell's type before the turn in the high 4 bits, and after it in the
+	 * low 4.
+	 */
+	private final byte[] types;
+	private final int currentTeam, queued;
+	private final boolean placing;
+
+	private ByteBuffer encoded;
+
+	ChangeFrame(long sequence, int[] cells, byte[] types, int currentTeam, int queued, boolean placing) {
+		this.sequence = sequence;
+		this.cells = cells;
+		this.types = types;
+		this.currentTeam = currentTeam;
+		this.queued = queued;
+		this.placing = placing;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return How many cells changed.
+	 */
+	public int getChangeCount() {
+		return cells.length;
+	}
+
+	public int getCell(int change) {
+		return cells[change];
+	}
+
+	/**
+	 * @return The type code that was in a changed cell before the turn.
+	 */
+	public int getOldType(int change) {
+		return types[change] >>> 4 & 0xF;
+	}
+
+	/**
+	 * @return The type code in a changed cell after the turn.
+	 */
+	public int getNewType(int change) {
+		return types[change] & 0xF;
+	}
+
+	public int getCurrentTeam() {
+		return currentTeam;
+	}
+
+	public int getQueued() {
+		return queued;
+	}
+
+	public boolean isPlacing() {
+		return placing;
+	}
+
+	/**
+	 * Makes the same changes to a game, which should be as the board was before
+	 * the turn.
+	 */
+	public void apply(BoardState state) {
+		for (int i = 0; i < cells.length; i++)
+			state.put(getNewType(i), cells[i]);
+		state.setCurrentTeam(currentTeam);
+		state.queue(queued);
+		state.setPlacing(placing);
+	}
+
+	/**
+	 * Applies an encoded frame or snapshot to a game, unless it's a frame that
+	 * the game already includes.
+	 *
+	 * @param sequence
+	 *            The sequence number of the last frame or snapshot applied to the
+	 *            game.
+	 * @return The sequence number of the game after this.
+	 */
+	public static long apply(ByteBuffer encoded, BoardState state, long sequence) {
+		if (encoded.get(encoded.position()) == SNAPSHOT) {
+			encoded.get();
+			long snapshotSequence = encoded.getLong();
+			PackedBoard.read(encoded).unpack(state);
+			return snapshotSequence;
+		}
+		ChangeFrame frame = decode(encoded);
+		if (frame.sequence <= sequence)
+			return sequence;
+		frame.apply(state);
+		return frame.sequence;
+	}
+
+	/**
+	 * @return A read-only buffer holding this frame: {@link #DELTA}, the
+	 *         sequence number, the current team (plus one), the queued piece and
+	 *         the placing flag as a byte each, the number of changes, and then
+	 *         each changed cell, followed by its old and new types in one byte.
+	 *         Each call returns a new view of the same bytes.
+	 */
+	public synchronized ByteBuffer encode() {
+		if (encoded == null) {
+			ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + 3 + 4 + cells.length * 5).put(DELTA).putLong(sequence)
+					.put((byte) (currentTeam + 1)).put((byte) queued).put((byte) (placing ? 1 : 0))
+					.putInt(cells.length);
+			for (int i = 0; i < cells.length; i++)
+				buffer.putInt(cells[i]).put(types[i]);
+			buffer.flip();
+			encoded = buffer.asReadOnlyBuffer();
+		}
+		return encoded.duplicate();
+	}
+
+	/**
+	 * Reads a frame written by {@link #encode()}, from the buffer's position,
+	 * moving the position past it.
+	 */
+	public static ChangeFrame decode(ByteBuffer buffer) {
+		if (buffer.get() != DELTA)
+			throw new IllegalArgumentException("Not a change frame.");
+		long sequence = buffer.getLong();
+		int currentTeam = buffer.get() - 1, queued = buffer.get();
+		boolean placing = buffer.get() != 0;
+		int[] cells = new int[buffer.getInt()];
+		byte[] types = new byte[cells.length];
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = buffer.getInt();
+			types[i] = buffer.get();
+		}
+		return new ChangeFrame(sequence, cells, types, currentTeam, queued, placing);
+	}
+
+	/**
+	 * @return A read-only buffer holding {@link #SNAPSHOT}, the sequence number of
+	 *         the last frame that the board includes, and then the board.
+	 */
+	public static ByteBuffer encodeSnapshot(long sequence, PackedBoard board) {
+		ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + PackedBoard.byteCount(board.getSize())).put(SNAPSHOT)
+				.putLong(sequence);
+		board.write(buffer);
+		buffer.flip();
+		return buffer.asReadOnlyBuffer();
+	}
+
+}
@@ -0,0 +1,158 @@
+package org.alixia.games.diplomacy;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Hands a {@link Board}'s {@link ChangeFrame}s out to any number of
+ * subscribers, such as the connections of people watching a game.
+ * <p>
+ * Each frame is encoded once, and every subscriber is given a view of the same
+ * bytes, so publishing costs little more per subscriber than adding to its
+ * queue. Queues are bounded. A subscriber that falls too far behind has its
+ * queue dropped and is given a snapshot of the whole game the next time it
+ * reads instead, so a slow subscriber never holds up the board or takes more
+ * than its share of memory. New subscribers start with a snapshot too.
+ * Snapshots are only encoded when someone needs one, and are shared until the
+ * next frame.
+ * <p>
+ * A snapshot can be newer than frames that are still queued behind it, so
+ * readers should skip any frame that isn't numbered after the last thing they
+ * read (see {@link ChangeFrame#apply(ByteBuffer, BoardState, long)}).
+ */
+public final class ChangePublisher implements Consumer<ChangeFrame> {
+
+	/**
+	 * Frames and snapshots waiting to be read by one subscriber.
+	 */
+	public final class Subscription implements Closeable {
+		private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+		/**
+		 * Whether the next thing read should be a snapshot, with everything queued
+		 * before it dropped.
+		 */
+		private boolean resync = true;
+		private boolean closed;
+
+		private Subscription() {
+		}
+
+		private synchronized void offer(ByteBuffer frame) {
+			if (resync || closed)
+				return;
+			if (queue.size() >= capacity) {
+				queue.clear();
+				resync = true;
+			} else
+				queue.add(frame);
+			notifyAll();
+		}
+
+		/**
+		 * @return The next encoded frame or snapshot, or <code>null</code> if there
+		 *         isn't one yet.
+		 */
+		public ByteBuffer poll() {
+			synchronized (this) {
+				if (!resync)
+					return queue.poll();
+				resync = false;
+			}
+			return snapshot();
+		}
+
+		/**
+		 * Waits for the next encoded frame or snapshot.
+		 *
+		 * @return The frame or snapshot, or <code>null</code> if the subscription
+		 *         was closed.
+		 */
+		public ByteBuffer take() throws InterruptedException {
+			synchronized (this) {
+				while (!closed && !resync && queue.isEmpty())
+					wait();
+				if (closed)
+					return null;
+			}
+			return poll();
+		}
+
+		/**
+		 * Stops this subscription. Nothing more is queued for it, and anything
+		 * waiting in {@link #take()} gets <code>null</code>.
+		 */
+		@Override
+		public void close() {
+			subscriptions.remove(this);
+			synchronized (this) {
+				closed = true;
+				queue.clear();
+				notifyAll();
+			}
+		}
+	}
+
+	private final int capacity;
+	private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	/**
+	 * The game as of {@link #sequence}, kept up to date from the frames, for
+	 * snapshots.
+	 */
+	private final BoardState state;
+	private long sequence;
+	private ByteBuffer snapshot;
+
+	/**
+	 * Starts publishing every change made to the given board from now on. This
+	 * must be called on the FX thread.
+	 *
+	 * @param capacity
+	 *            The most frames that may be queued for a subscriber before it's
+	 *            made to start over from a snapshot.
+	 */
+	public ChangePublisher(Board board, int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		this.capacity = capacity;
+		state = new BoardState(board.getBoardSize());
+		board.pack().unpack(state);
+		sequence = board.getChangeSequence();
+		board.addChangeListener(this);
+	}
+
+	/**
+	 * @return A new subscription, whose first read is a snapshot of the game.
+	 */
+	public Subscription subscribe() {
+		Subscription subscription = new Subscription();
+		subscriptions.add(subscription);
+		return subscription;
+	}
+
+	public int getSubscriberCount() {
+		return subscriptions.size();
+	}
+
+	@Override
+	public void accept(ChangeFrame frame) {
+		synchronized (this) {
+			frame.apply(state);
+			sequence = frame.getSequence();
+			snapshot = null;
+		}
+		ByteBuffer encoded = frame.encode();
+		for (Subscription subscription : subscriptions)
+			subscription.offer(encoded.duplicate());
+	}
+
+	private synchronized ByteBuffer snapshot() {
+		if (snapshot == null)
+			snapshot = ChangeFrame.encodeSnapshot(sequence, PackedBoard.of(state));
+		return snapshot.duplicate();
+	}
+
+}
@@ -1,11 +1,26 @@
 package org.alixia.games.diplomacy;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+
 import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.geometry.Pos;
 import javafx.scene.Scene;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
+import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
 import javafx.stage.Stage;
 
 public final class Diplomacy extends Application {
 
+	private static final KeyCombination UNDO = new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN),
+			REDO = new KeyCodeCombination(KeyCode.Y, KeyCombination.SHORTCUT_DOWN);
+
 	public Diplomacy() {
 	}
 
@@ -13,13 +28,100 @@ public final class Diplomacy extends Application {
 	public void start(Stage primaryStage) throws Exception {
 		// Two possible window size options exist, the first being a 1028x1028 size
 		// window, and the second being a 514x514 size window, for now.
-		primaryStage.setWidth(1028);
-		primaryStage.setHeight(1028);
-		Board board = new Board();
+		// The splash screen is shown while the rest of the game's images load in the
+		// background.
+		ImageView splash = new ImageView(ResourceManager.getImage(ResourceManager.SPLASH_SCREEN));
+		splash.setPreserveRatio(true);
+		splash.setFitWidth(1028);
+		splash.setFitHeight(1028);
+		primaryStage.setScene(new Scene(new StackPane(splash), 1028, 1028, Color.BLACK));
+		primaryStage.show();
+
+		ResourceManager.loadAsync().whenComplete((result, error) -> Platform.runLater(() -> {
+			if (error != null)
+				error.printStackTrace();
+			Board board = createBoard();
+			PerformanceOverlay overlay = new PerformanceOverlay(board);
+			StackPane.setAlignment(overlay, Pos.TOP_LEFT);
+			primaryStage.getScene().setRoot(new StackPane(board, overlay));
+			// Ctrl+Z and Ctrl+Y take back and remake moves, and F3 shows and hides the
+			// performance overlay.
+			primaryStage.getScene().setOnKeyPressed(event -> {
+				if (UNDO.match(event))
+					board.undo();
+				else if (REDO.match(event))
+					board.redo();
+				else if (event.getCode() == KeyCode.F3)
+					overlay.toggle();
+			});
+			// --hud shows it from the start.
+			if (getParameters().getUnnamed().contains("--hud"))
+				overlay.toggle();
+		}));
+	}
+
+	private MoveJournal.Writer journal;
+	private GameClient client;
+
+	private Board createBoard() {
+		// --render=canvas draws the board on a single canvas instead of using a node
+		// per piece.
+		String render = getParameters().getNamed().get("render");
+		Board board = new Board(
+				render == null ? Board.RenderMode.NODES : Board.RenderMode.valueOf(render.toUpperCase()));
+		// Teams listed in the "ai" parameter (e.g. --ai=white,blue) are played by the
+		// computer.
+		String ai = getParameters().getNamed().get("ai");
+		if (ai != null) {
+			AIPlayer player = new AIPlayer(1000);
+			for (String team : ai.split(","))
+				board.setComputerPlayer(Board.Team.valueOf(team.trim().toUpperCase()), player);
+		}
+		// --record=<file> writes every move made to a journal file.
+		String record = getParameters().getNamed().get("record");
+		if (record != null)
+			try {
+				board.setJournal(journal = new MoveJournal.Writer(Paths.get(record), board.getBoardSize()), error -> {
+					System.err.println("Stopped recording to " + record + ":");
+					error.printStackTrace();
+				});
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		// --connect=<host>:<port> plays session --session=<number> on a game server,
+		// as the teams listed in --teams (e.g. --teams=red,blue), or all of them.
+		// Problems with the connection are shown over the board.
+		String connect = getParameters().getNamed().get("connect");
+		if (connect != null)
+			try {
+				int colon = connect.lastIndexOf(':');
+				client = new GameClient(
+						new InetSocketAddress(connect.substring(0, colon), Integer.parseInt(connect.substring(colon + 1))));
+				board.setClient(client, error -> board.getLabelLayer().spawnAtPointer(
+						error.getMessage() == null ? error.toString() : error.getMessage(), Color.RED, 20));
+				String session = getParameters().getNamed().get("session"),
+						teams = getParameters().getNamed().get("teams");
+				int mask = 0;
+				if (teams == null)
+					mask = (1 << Board.Team.values().length) - 1;
+				else
+					for (String team : teams.split(","))
+						mask |= 1 << Board.Team.valueOf(team.trim().toUpperCase()).ordinal();
+				client.join(session == null ? 0 : Integer.parseInt(session), board.getBoardSize(), mask);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
 		board.setPrefWidth(1028);
 		board.setPrefHeight(1028);
-		primaryStage.setScene(new Scene(board));
-		primaryStage.show();
+		return board;
+	}
+
+	@Override
+	public void stop() throws Exception {
+		if (journal != null)
+			journal.close();
+		if (client != null)
+			client.close();
 	}
 
 	public static void main(String[] args) {
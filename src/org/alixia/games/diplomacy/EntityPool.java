@@ -0,0 +1,62 @@
+package org.alixia.games.diplomacy;
+
+import java.util.ArrayDeque;
+
+/**
+ * Keeps the {@link BoardEntity}s that a {@link Board} is done with, by type, so
+ * that it can reuse them instead of making new ones every turn. Entities are
+ * reset when they're given back, so one from the pool is no different from a
+ * new one, except that it still has its last sprite cached.
+ * <p>
+ * Only entities that nothing else refers to anymore may be given back. A board
+ * only gives back entities that it took from its pool and dropped itself, in
+ * the middle of making a move, never ones that were returned from one of its
+ * methods. Entities that didn't come from a pool, such as ones handed to
+ * {@link Board#put(BoardEntity, int, int)}, are never kept, since whoever made
+ * them may still be using them.
+ */
+final class EntityPool {
+
+	/**
+	 * The most entities of each type to keep. More than this are left to be
+	 * garbage collected.
+	 */
+	private static final int MAX_PER_TYPE = 64;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private final ArrayDeque<BoardEntity>[] free = new ArrayDeque[BoardEntity.Type.values().length];
+
+	{
+		for (int i = 0; i < free.length; i++)
+			free[i] = new ArrayDeque<>();
+	}
+
+	/**
+	 * @return An entity of the given type that isn't on any board, selected or
+	 *         glowing.
+	 */
+	BoardEntity obtain(BoardEntity.Type type) {
+		BoardEntity entity = free[type.ordinal()].poll();
+		if (entity == null) {
+			entity = new BoardEntity(type);
+			entity.pooled = true;
+		}
+		return entity;
+	}
+
+	/**
+	 * Gives an entity back to be reused. Nothing may use the entity after this.
+	 * Entities that weren't {@link #obtain(BoardEntity.Type) obtained} from a
+	 * pool are ignored.
+	 */
+	void recycle(BoardEntity entity) {
+		if (!entity.pooled)
+			return;
+		ArrayDeque<BoardEntity> entities = free[entity.getType().ordinal()];
+		if (entities.size() < MAX_PER_TYPE) {
+			entity.reset();
+			entities.push(entity);
+		}
+	}
+
+}
@@ -1,21 +1,14 @@
 package org.alixia.games.diplomacy;
 
-import java.awt.MouseInfo;
-
-import javafx.animation.FadeTransition;
-import javafx.animation.Interpolator;
-import javafx.animation.TranslateTransition;
-import javafx.scene.control.Label;
 import javafx.scene.paint.Color;
-import javafx.stage.Popup;
 import javafx.stage.Stage;
-import javafx.util.Duration;
 
 public final class FXTools {
 	/**
 	 * Spawns a floating piece of text that flies upwards a little then disappears.
 	 * The source point of the text is specified via the {@code x} and {@code y}
-	 * parameters.
+	 * parameters, on the screen. The text is shown in the owner's scene's
+	 * {@link FloatingLabelLayer}, which is added to the scene if it has none.
 	 *
 	 * @param text
 	 *            The text to render.
@@ -28,41 +21,15 @@ public final class FXTools {
 	 */
 	public static void spawnLabel(Stage owner, double fontSize, final String text, final Color color, final double x,
 			final double y) {
-		final Popup pc = new Popup();
-		final Label label = new Label(text);
-		label.setMouseTransparent(true);
-		final TranslateTransition translateTransition = new TranslateTransition(Duration.seconds(2), label);
-		final FadeTransition opacityTransition = new FadeTransition(Duration.seconds(2), label);
-
-		pc.getScene().setRoot(label);
-		/* Style label */
-		label.setTextFill(color);
-		label.setBackground(null);
-		label.setStyle("-fx-font-weight: bold; -fx-font-size: " + fontSize + "px;");
-		/* Set Popup positions */
-		pc.setX(x);
-		pc.setWidth(label.getMaxWidth());
-		pc.setY(y - 50);
-		/* Build transitions */
-		translateTransition.setFromY(30);
-		translateTransition.setFromX(0);
-		translateTransition.setToX(0);
-		translateTransition.setToY(5);
-		translateTransition.setInterpolator(Interpolator.EASE_OUT);
-		opacityTransition.setFromValue(0.7);
-		opacityTransition.setToValue(0.0);
-		opacityTransition.setOnFinished(e -> pc.hide());
-		/* Show the Popup */
-		pc.show(owner);
-		pc.setHeight(50);
-		/* Play the transitions */
-		translateTransition.play();
-		opacityTransition.play();
+		FloatingLabelLayer.of(owner.getScene()).spawnOnScreen(text, color, fontSize, x, y);
 	}
 
+	/**
+	 * Spawns a floating piece of text where the mouse last was in the owner's
+	 * scene.
+	 */
 	public static void spawnLabelAtMousePos(Stage owner, double fontSize, final String text, final Color color) {
-		spawnLabel(owner, fontSize, text, color, MouseInfo.getPointerInfo().getLocation().getX(),
-				MouseInfo.getPointerInfo().getLocation().getY());
+		FloatingLabelLayer.of(owner.getScene()).spawnAtPointer(text, color, fontSize);
 	}
 
 	private FXTools() {
@@ -0,0 +1,205 @@
+package org.alixia.games.diplomacy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javafx.animation.AnimationTimer;
+import javafx.animation.Interpolator;
+import javafx.event.EventHandler;
+import javafx.geometry.Point2D;
+import javafx.scene.Group;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.FontWeight;
+
+/**
+ * Shows pieces of text that float upwards a little and fade away, such as
+ * damage or score numbers, over the top of whatever is under this layer.
+ * <p>
+ * Labels are shown in this layer, inside the scene, rather than each in a
+ * window of its own, and are used again once they've faded rather than being
+ * made fresh, so after the first few nothing is allocated to show one. All of
+ * the labels that are showing are moved by one {@link AnimationTimer}, which
+ * only runs while any are. The layer isn't managed by its parent, so showing a
+ * label only ever lays out the layer itself.
+ * <p>
+ * The layer keeps track of where the mouse is in its scene, from the scene's
+ * own mouse events, for {@link #spawnAtPointer(String, Color, double)}. The
+ * first layer put into a scene is the one that {@link #of(Scene)} finds.
+ * <p>
+ * This must only be used from the FX thread.
+ */
+public final class FloatingLabelLayer extends Pane {
+
+	private static final String SCENE_KEY = FloatingLabelLayer.class.getName();
+
+	/**
+	 * How long a label takes to fade away.
+	 */
+	private static final long DURATION_NANOS = 2_000_000_000L;
+
+	/**
+	 * How far above the point it's spawned at a label's top edge starts and ends,
+	 * and how opaque it starts.
+	 */
+	private static final double START_OFFSET = 20, END_OFFSET = 45, START_OPACITY = 0.7;
+
+	/**
+	 * The labels that are showing, in the order they were spawned, and when each
+	 * was spawned.
+	 */
+	private Label[] active = new Label[16];
+	private long[] spawned = new long[16];
+	private int activeCount;
+
+	/**
+	 * The labels that have faded away, to be shown again.
+	 */
+	private final List<Label> free = new ArrayList<>();
+
+	private Font font;
+
+	private double pointerX = Double.NaN, pointerY = Double.NaN;
+
+	private final EventHandler<MouseEvent> pointerTracker = event -> {
+		pointerX = event.getSceneX();
+		pointerY = event.getSceneY();
+	};
+
+	private final AnimationTimer timer = new AnimationTimer() {
+
+		@Override
+		public void handle(long now) {
+			int kept = 0;
+			for (int i = 0; i < activeCount; i++) {
+				Label label = active[i];
+				// The frame's time can be a little behind when the label was spawned.
+				double progress = Math.max(0, (now - spawned[i]) / (double) DURATION_NANOS);
+				if (progress >= 1) {
+					label.setVisible(false);
+					free.add(label);
+					continue;
+				}
+				// Labels only move up by a little, so this eases out to look like they're
+				// slowing down.
+				label.setTranslateY(-Interpolator.EASE_OUT.interpolate(START_OFFSET, END_OFFSET, progress));
+				label.setOpacity(START_OPACITY * (1 - progress));
+				active[kept] = label;
+				spawned[kept++] = spawned[i];
+			}
+			for (int i = kept; i < activeCount; i++)
+				active[i] = null;
+			activeCount = kept;
+			if (activeCount == 0)
+				stop();
+		}
+	};
+
+	public FloatingLabelLayer() {
+		setManaged(false);
+		setMouseTransparent(true);
+		setPickOnBounds(false);
+		sceneProperty().addListener((observable, oldValue, newValue) -> {
+			if (oldValue != null) {
+				oldValue.removeEventFilter(MouseEvent.ANY, pointerTracker);
+				oldValue.getProperties().remove(SCENE_KEY, this);
+			}
+			pointerX = pointerY = Double.NaN;
+			if (newValue != null) {
+				newValue.addEventFilter(MouseEvent.ANY, pointerTracker);
+				newValue.getProperties().putIfAbsent(SCENE_KEY, this);
+			}
+		});
+	}
+
+	/**
+	 * @return The layer in the given scene, which is added to the top of the
+	 *         scene's root if there isn't one yet.
+	 * @throws IllegalArgumentException
+	 *             If the scene has no layer, and its root isn't a {@link Pane} or
+	 *             a {@link Group} that one could be added to.
+	 */
+	public static FloatingLabelLayer of(Scene scene) {
+		Object layer = scene.getProperties().get(SCENE_KEY);
+		if (layer != null)
+			return (FloatingLabelLayer) layer;
+		FloatingLabelLayer created = new FloatingLabelLayer();
+		Parent root = scene.getRoot();
+		if (root instanceof Pane)
+			((Pane) root).getChildren().add(created);
+		else if (root instanceof Group)
+			((Group) root).getChildren().add(created);
+		else
+			throw new IllegalArgumentException("Can't add floating labels to a " + root.getClass().getName() + ".");
+		return created;
+	}
+
+	/**
+	 * Shows a label that floats up from the given point, in this layer's
+	 * coordinates.
+	 */
+	public void spawn(String text, Color color, double fontSize, double x, double y) {
+		Label label = free.isEmpty() ? newLabel() : free.remove(free.size() - 1);
+		if (font == null || font.getSize() != fontSize)
+			font = Font.font(null, FontWeight.BOLD, fontSize);
+		label.setFont(font);
+		label.setTextFill(color);
+		label.setText(text);
+		label.relocate(x, y);
+		label.setTranslateY(-START_OFFSET);
+		label.setOpacity(START_OPACITY);
+		label.setVisible(true);
+
+		if (activeCount == active.length) {
+			active = Arrays.copyOf(active, activeCount * 2);
+			spawned = Arrays.copyOf(spawned, activeCount * 2);
+		}
+		active[activeCount] = label;
+		spawned[activeCount++] = System.nanoTime();
+		timer.start();
+	}
+
+	/**
+	 * Shows a label that floats up from the point on the screen given.
+	 */
+	public void spawnOnScreen(String text, Color color, double fontSize, double screenX, double screenY) {
+		Point2D point = screenToLocal(screenX, screenY);
+		if (point != null)
+			spawn(text, color, fontSize, point.getX(), point.getY());
+	}
+
+	/**
+	 * Shows a label that floats up from wherever the mouse was last seen in this
+	 * layer's scene, or from the middle of the scene if it hasn't been seen yet.
+	 */
+	public void spawnAtPointer(String text, Color color, double fontSize) {
+		Scene scene = getScene();
+		if (scene == null)
+			return;
+		Point2D point = Double.isNaN(pointerX) ? sceneToLocal(scene.getWidth() / 2, scene.getHeight() / 2)
+				: sceneToLocal(pointerX, pointerY);
+		spawn(text, color, fontSize, point.getX(), point.getY());
+	}
+
+	/**
+	 * @return How many labels are showing.
+	 */
+	public int getActiveCount() {
+		return activeCount;
+	}
+
+	private Label newLabel() {
+		Label label = new Label();
+		label.setMouseTransparent(true);
+		label.setBackground(null);
+		getChildren().add(label);
+		return label;
+	}
+
+}
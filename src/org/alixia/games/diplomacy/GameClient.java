@@ -0,0 +1,149 @@
+package org.alixia.games.diplomacy;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A connection to a {@link GameServer}, for playing in one of its sessions.
+ * <p>
+ * Messages from the server are read on a thread of the client's own and handed
+ * to a {@link Listener} on that thread. Sending may be done from any thread.
+ */
+public final class GameClient implements Closeable {
+
+	/**
+	 * Is told what the server sends. Every method is called on the client's
+	 * reading thread.
+	 */
+	public interface Listener {
+		/**
+		 * Called once the session has been joined, with the game as it is.
+		 */
+		void joined(int session, PackedBoard board);
+
+		/**
+		 * Called with moves, as encoded by {@link Moves}, that were made in the
+		 * session by any of its players, to be made on the client's copy of the
+		 * game, in order.
+		 */
+		void moved(long[] moves);
+
+		/**
+		 * Called when a move that this client sent was not allowed. That move and
+		 * every move after it in the same {@link GameClient#send(long...) batch}
+		 * were dropped.
+		 */
+		default void rejected(int index) {
+		}
+
+		/**
+		 * Called with a message that the server sent about something that this
+		 * client did wrong, such as sending a move before joining a session.
+		 */
+		default void error(String message) {
+		}
+
+		/**
+		 * Called once the connection has closed, with the reason why, or
+		 * <code>null</code> if it was closed by {@link #close()}. If the server
+		 * closed it, the reason is an {@link EOFException}.
+		 */
+		default void disconnected(IOException error) {
+		}
+	}
+
+	private final SocketChannel channel;
+
+	public GameClient(InetSocketAddress address) throws IOException {
+		channel = SocketChannel.open(address);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+	}
+
+	/**
+	 * Starts reading from the server on a new daemon thread. This should only be
+	 * called once.
+	 */
+	public void start(Listener listener) {
+		Thread reader = new Thread(() -> read(listener), "Game client reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	private void read(Listener listener) {
+		ByteBuffer in = ByteBuffer.allocate(1 << 10);
+		IOException error = null;
+		try {
+			while (channel.read(in) != -1) {
+				in.flip();
+				for (ByteBuffer frame; (frame = Protocol.nextFrame(in)) != null;)
+					switch (frame.get()) {
+					case Protocol.STATE:
+						listener.joined(frame.getInt(), PackedBoard.read(frame));
+						break;
+					case Protocol.MOVES_MADE:
+						listener.moved(Protocol.readMoves(frame));
+						break;
+					case Protocol.REJECTED:
+						listener.rejected(frame.getShort() & 0xFFFF);
+						break;
+					case Protocol.ERROR:
+						byte[] message = new byte[frame.remaining()];
+						frame.get(message);
+						listener.error(new String(message, StandardCharsets.UTF_8));
+						break;
+					}
+				in.compact();
+				in = Protocol.grow(in);
+			}
+			error = new EOFException("The server closed the connection.");
+		} catch (IOException e) {
+			if (channel.isOpen())
+				error = e;
+		} catch (RuntimeException e) {
+			error = new IOException("Bad message from server.", e);
+		} finally {
+			try {
+				channel.close();
+			} catch (IOException e) {
+			}
+			listener.disconnected(error);
+		}
+	}
+
+	/**
+	 * Joins a session, starting it with a new game of the given size if it
+	 * doesn't exist yet.
+	 *
+	 * @param teams
+	 *            The teams to play, as a mask with bit <code>1 &lt;&lt; team</code>
+	 *            set for each, or <code>0</code> to only watch.
+	 */
+	public void join(int session, int size, int teams) throws IOException {
+		write(Protocol.join(session, size, teams));
+	}
+
+	/**
+	 * Sends moves, as encoded by {@link Moves}, to be made in order. None of them
+	 * are made on the client's game until the server sends them back.
+	 */
+	public void send(long... moves) throws IOException {
+		write(Protocol.moves(Protocol.MOVES, moves, moves.length));
+	}
+
+	private synchronized void write(ByteBuffer frame) throws IOException {
+		while (frame.hasRemaining())
+			channel.write(frame);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
@@ -0,0 +1,381 @@
+package org.alixia.games.diplomacy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hosts any number of games at once over the network, each in its own session
+ * that clients join by number, playing by the rules of {@link BoardState}.
+ * <p>
+ * Everything happens on one thread, around one {@link Selector}, so sessions
+ * need no locking and an idle connection costs only its buffers. Moves that a
+ * client sends are checked with {@link MoveGenerator#isLegal(BoardState, long)}
+ * and made on the session's game as they're read. Then, once everything that
+ * was ready has been read, each session that changed sends the moves that were
+ * made in it as one {@link Protocol#MOVES_MADE} frame, built once and shared by
+ * all of the session's connections. Clients keep their own copies of the game
+ * up to date by making the same moves, so only the whole game is ever sent when
+ * a client joins. See {@link Protocol} for the messages.
+ */
+public final class GameServer implements Runnable, Closeable {
+
+	private static final int READ_BUFFER_BYTES = 1 << 10;
+	private static final int MAX_MOVES_PER_FRAME = 0xFFFF;
+	/**
+	 * The most bytes that may be waiting to be sent to a connection. A client that
+	 * reads slower than its session plays is disconnected once it's this far
+	 * behind, rather than the server holding every move made since for it. It can
+	 * join again to get the whole game.
+	 */
+	private static final int MAX_QUEUED_BYTES = 1 << 20;
+
+	private final class Session {
+		private final int id;
+		private final BoardState state;
+		private final MoveGenerator generator;
+		private final List<Connection> connections = new ArrayList<>();
+		/**
+		 * The teams that some connection plays, as a mask.
+		 */
+		private int claimed;
+
+		/**
+		 * The moves made since the session's connections were last told.
+		 */
+		private long[] made = new long[16];
+		private int madeCount;
+
+		private Session(int id, int size) {
+			this.id = id;
+			state = new BoardState(size);
+			state.setup();
+			state.nextTurn();
+			generator = MoveGenerator.forSize(size);
+		}
+
+		/**
+		 * Makes the given moves, in order, for the given connection, stopping at
+		 * the first one that the connection may not make.
+		 *
+		 * @return The index of the move that was stopped at, or <code>-1</code> if
+		 *         every move was made.
+		 */
+		private int play(Connection connection, long[] moves) {
+			for (int i = 0; i < moves.length; i++) {
+				long move = moves[i];
+				int team = state.getCurrentTeam();
+				if (team == BoardState.NO_TEAM || (connection.teams & 1 << team) == 0
+						|| !(move == Moves.PASS ? !hasMoves() : generator.isLegal(state, move)))
+					return i;
+				state.apply(move);
+				if (madeCount == made.length)
+					made = Arrays.copyOf(made, madeCount * 2);
+				made[madeCount++] = move;
+			}
+			return -1;
+		}
+
+		/**
+		 * A team may only pass when it has nothing else it can do.
+		 */
+		private boolean hasMoves() {
+			if (buffer.length < generator.getMaxMoves())
+				buffer = new long[generator.getMaxMoves()];
+			return generator.generateMoves(state, buffer) != 0;
+		}
+
+		/**
+		 * Sends the moves made since the last flush to every connection.
+		 */
+		private void flush() {
+			for (int sent = 0; sent < madeCount; sent += MAX_MOVES_PER_FRAME) {
+				int count = Math.min(MAX_MOVES_PER_FRAME, madeCount - sent);
+				ByteBuffer frame = Protocol.moves(Protocol.MOVES_MADE, Arrays.copyOfRange(made, sent, sent + count),
+						count);
+				for (Connection connection : connections)
+					connection.send(frame.duplicate());
+			}
+			madeCount = 0;
+		}
+	}
+
+	private final class Connection {
+		private final SocketChannel channel;
+		private final SelectionKey key;
+		private ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_BYTES);
+		private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+		/**
+		 * How many bytes are left to send of the frames in {@link #out}.
+		 */
+		private int queuedBytes;
+		private Session session;
+		private int teams;
+
+		private Connection(SocketChannel channel) throws IOException {
+			this.channel = channel;
+			key = channel.register(selector, SelectionKey.OP_READ, this);
+		}
+
+		private void read() throws IOException {
+			if (channel.read(in) == -1) {
+				close();
+				return;
+			}
+			in.flip();
+			for (ByteBuffer frame; key.isValid() && (frame = Protocol.nextFrame(in)) != null;)
+				receive(frame);
+			in.compact();
+			in = Protocol.grow(in);
+		}
+
+		private void receive(ByteBuffer frame) {
+			switch (frame.get()) {
+			case Protocol.JOIN:
+				join(frame.getInt(), frame.getInt(), frame.get());
+				break;
+			case Protocol.MOVES:
+				if (session == null) {
+					send(Protocol.error("Not in a session."));
+					break;
+				}
+				boolean unchanged = session.madeCount == 0;
+				int rejected = session.play(this, Protocol.readMoves(frame));
+				if (rejected != -1)
+					send(Protocol.rejected(rejected));
+				if (unchanged && session.madeCount != 0)
+					changed.add(session);
+				break;
+			default:
+				send(Protocol.error("Unknown message."));
+			}
+		}
+
+		private void join(int id, int size, int teams) {
+			if (session != null) {
+				send(Protocol.error("Already in a session."));
+				return;
+			}
+			teams &= (1 << BoardState.TEAM_COUNT) - 1;
+			Session session = sessions.get(id);
+			if (session == null) {
+				if (size < 2 || Protocol.HEADER_BYTES + 4 + PackedBoard.byteCount(size) > Protocol.MAX_FRAME_BYTES) {
+					send(Protocol.error("Unsupported board size: " + size));
+					return;
+				}
+				sessions.put(id, session = new Session(id, size));
+			} else if (session.state.getSize() != size) {
+				send(Protocol.error("Session " + id + " has a board of size " + session.state.getSize() + "."));
+				return;
+			}
+			if ((session.claimed & teams) != 0) {
+				send(Protocol.error("Another player already plays one of those teams."));
+				return;
+			}
+			// Moves that were made but not yet sent are already part of the state that
+			// the new connection gets, so they're sent to everyone else first.
+			if (session.madeCount != 0) {
+				changed.remove(session);
+				session.flush();
+			}
+			session.claimed |= teams;
+			session.connections.add(this);
+			this.session = session;
+			this.teams = teams;
+			send(Protocol.state(id, PackedBoard.of(session.state)));
+		}
+
+		/**
+		 * Queues a frame to be sent, and sends as much as the connection will take
+		 * right away. If that would leave more than {@link #MAX_QUEUED_BYTES} waiting,
+		 * the connection is closed instead. A frame is always queued if nothing else
+		 * is, however big it is, so that joining a big game works.
+		 */
+		private void send(ByteBuffer frame) {
+			if (!key.isValid())
+				return;
+			if (!out.isEmpty() && queuedBytes + frame.remaining() > MAX_QUEUED_BYTES) {
+				// Like a failed write, this may be in the middle of going through a session's
+				// connections.
+				key.cancel();
+				broken.add(this);
+				return;
+			}
+			queuedBytes += frame.remaining();
+			out.add(frame);
+			if (out.size() == 1)
+				write();
+		}
+
+		private void write() {
+			try {
+				for (ByteBuffer frame; (frame = out.peek()) != null; out.poll()) {
+					queuedBytes -= channel.write(frame);
+					if (frame.hasRemaining()) {
+						key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+						return;
+					}
+				}
+				key.interestOps(SelectionKey.OP_READ);
+			} catch (IOException e) {
+				// This may be in the middle of going through a session's connections, so
+				// the connection is closed once everything that's ready has been handled.
+				key.cancel();
+				broken.add(this);
+			}
+		}
+
+		private void close() {
+			key.cancel();
+			if (!channel.isOpen())
+				return;
+			try {
+				channel.close();
+			} catch (IOException e) {
+			}
+			out.clear();
+			queuedBytes = 0;
+			if (session != null) {
+				session.connections.remove(this);
+				session.claimed &= ~teams;
+				if (session.connections.isEmpty()) {
+					sessions.remove(session.id);
+					changed.remove(session);
+				}
+				session = null;
+			}
+		}
+	}
+
+	private final Selector selector;
+	private final ServerSocketChannel server;
+	private final Map<Integer, Session> sessions = new HashMap<>();
+	/**
+	 * The sessions that have had moves made since the last time they were sent.
+	 */
+	private final List<Session> changed = new ArrayList<>();
+	/**
+	 * The connections that failed while being written to.
+	 */
+	private final List<Connection> broken = new ArrayList<>();
+	/**
+	 * Shared by every session for checking whether a team has any moves.
+	 */
+	private long[] buffer = new long[0];
+
+	private volatile boolean running = true;
+
+	/**
+	 * Opens a server on the given address. Nothing is accepted until
+	 * {@link #run()} is called.
+	 *
+	 * @param address
+	 *            The address to listen on. A port of <code>0</code> picks any free
+	 *            port; see {@link #getAddress()}.
+	 */
+	public GameServer(InetSocketAddress address) throws IOException {
+		selector = Selector.open();
+		server = ServerSocketChannel.open();
+		try {
+			server.bind(address, 1024);
+			server.configureBlocking(false);
+			server.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			server.close();
+			selector.close();
+			throw e;
+		}
+	}
+
+	public InetSocketAddress getAddress() throws IOException {
+		return (InetSocketAddress) server.getLocalAddress();
+	}
+
+	/**
+	 * Serves clients until {@link #close()} is called, then closes every
+	 * connection.
+	 */
+	@Override
+	public void run() {
+		try {
+			while (running) {
+				selector.select();
+				for (Iterator<SelectionKey> iterator = selector.selectedKeys().iterator(); iterator.hasNext();) {
+					SelectionKey key = iterator.next();
+					iterator.remove();
+					if (!key.isValid())
+						continue;
+					if (key.isAcceptable())
+						accept();
+					else {
+						Connection connection = (Connection) key.attachment();
+						try {
+							if (key.isWritable())
+								connection.write();
+							if (key.isValid() && key.isReadable())
+								connection.read();
+						} catch (IOException | RuntimeException e) {
+							connection.close();
+						}
+					}
+				}
+				for (Session session : changed)
+					session.flush();
+				changed.clear();
+				for (Connection connection : broken)
+					connection.close();
+				broken.clear();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			for (SelectionKey key : selector.keys())
+				if (key.attachment() instanceof Connection)
+					((Connection) key.attachment()).close();
+			try {
+				server.close();
+				selector.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void accept() throws IOException {
+		for (SocketChannel channel; (channel = server.accept()) != null;) {
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			new Connection(channel);
+		}
+	}
+
+	/**
+	 * Stops {@link #run()}, which closes every connection on its way out.
+	 */
+	@Override
+	public void close() {
+		running = false;
+		selector.wakeup();
+	}
+
+	public static void main(String[] args) throws IOException {
+		int port = args.length == 0 ? 7431 : Integer.parseInt(args[0]);
+		GameServer server = new GameServer(new InetSocketAddress(port));
+		System.out.println("Serving on " + server.getAddress());
+		server.run();
+	}
+
+}
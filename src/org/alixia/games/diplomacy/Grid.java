@@ -0,0 +1,61 @@
+package org.alixia.games.diplomacy;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+
+/**
+ * Draws the lines between a board's cells, for any number of cells.
+ * <p>
+ * The lines match the grid image the board used to be drawn with: a board of
+ * <code>n</code> cells is crossed by <code>n + 1</code> lines each way, one on
+ * either edge, each a thirty-second as thick as the space between two lines.
+ * Since the lines are drawn rather than scaled from an image, they stay sharp
+ * at any size, and no memory is needed for them beyond whatever they're drawn
+ * into.
+ */
+final class Grid {
+
+	private static final Color COLOR = Color.BLACK;
+
+	/**
+	 * How much thinner a line is than the space between two lines.
+	 */
+	private static final int SPACING_PER_THICKNESS = 32;
+
+	/**
+	 * @return How thick the lines on a board of the given size are, when it's
+	 *         drawn the given number of pixels wide (or tall).
+	 */
+	static double thickness(int size, double pixels) {
+		return pixels / (SPACING_PER_THICKNESS * size + 1);
+	}
+
+	/**
+	 * Draws every line that crosses the given rectangle. Lines aren't clipped to
+	 * the rectangle, so the graphics context should be clipped to it if nothing
+	 * outside of it is to be drawn over.
+	 *
+	 * @param size
+	 *            How many cells wide and tall the board is.
+	 * @param width
+	 *            How wide the whole board is drawn.
+	 * @param height
+	 *            How tall the whole board is drawn.
+	 */
+	static void draw(GraphicsContext gc, int size, double width, double height, double x, double y, double w,
+			double h) {
+		double thicknessX = thickness(size, width), thicknessY = thickness(size, height),
+				spacingX = thicknessX * SPACING_PER_THICKNESS, spacingY = thicknessY * SPACING_PER_THICKNESS;
+		gc.setFill(COLOR);
+		for (int i = Math.max(0, (int) ((x - thicknessX) / spacingX)), last = Math.min(size,
+				(int) ((x + w) / spacingX)); i <= last; i++)
+			gc.fillRect(i * spacingX, y, thicknessX, h);
+		for (int i = Math.max(0, (int) ((y - thicknessY) / spacingY)), last = Math.min(size,
+				(int) ((y + h) / spacingY)); i <= last; i++)
+			gc.fillRect(x, i * spacingY, w, thicknessY);
+	}
+
+	private Grid() {
+	}
+
+}
@@ -0,0 +1,141 @@
+package org.alixia.games.diplomacy;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The game's Java Flight Recorder events, and the counters shown by
+ * {@link PerformanceOverlay}.
+ * <p>
+ * Events cost next to nothing unless a recording that enables them is running,
+ * e.g. <code>-XX:StartFlightRecording</code> or <code>jcmd &lt;pid&gt;
+ * JFR.start</code>. They're all in the "Diplomacy" category. The counters are
+ * only kept while {@link #isCounting() counting} is on, which it is while the
+ * overlay is shown, so they cost a field read otherwise.
+ */
+final class Instrumentation {
+
+	@Name("org.alixia.games.diplomacy.Put")
+	@Label("Board Put")
+	@Category("Diplomacy")
+	@StackTrace(false)
+	static final class PutEvent extends Event {
+		@Label("Row")
+		int row;
+		@Label("Column")
+		int col;
+		@Label("Type")
+		String type;
+	}
+
+	@Name("org.alixia.games.diplomacy.SelectTeam")
+	@Label("Select Team")
+	@Category("Diplomacy")
+	@StackTrace(false)
+	static final class SelectTeamEvent extends Event {
+		@Label("Team")
+		String team;
+		@Label("Entities")
+		int entities;
+	}
+
+	/**
+	 * Covers a whole move: making it, handing the turn to the next team, and
+	 * recording it. The bytes that the FX thread allocated meanwhile are only
+	 * measured when the event is recorded.
+	 */
+	@Name("org.alixia.games.diplomacy.Turn")
+	@Label("Turn")
+	@Category("Diplomacy")
+	@StackTrace(false)
+	static final class TurnEvent extends Event {
+		@Label("Team")
+		String team;
+		@Label("Move")
+		long move;
+		@Label("Allocated")
+		@DataAmount
+		long allocated;
+	}
+
+	@Name("org.alixia.games.diplomacy.NextTurn")
+	@Label("Next Turn")
+	@Category("Diplomacy")
+	@StackTrace(false)
+	static final class NextTurnEvent extends Event {
+		@Label("Team")
+		String team;
+	}
+
+	@Name("org.alixia.games.diplomacy.Click")
+	@Label("Click")
+	@Category("Diplomacy")
+	@StackTrace(false)
+	static final class ClickEvent extends Event {
+		@Label("Row")
+		int row;
+		@Label("Column")
+		int col;
+		@Label("On Entity")
+		boolean entity;
+	}
+
+	@Name("org.alixia.games.diplomacy.ImageLoad")
+	@Label("Image Load")
+	@Category("Diplomacy")
+	static final class ImageLoadEvent extends Event {
+		@Label("Path")
+		String path;
+		@Label("Width")
+		int width;
+		@Label("Height")
+		int height;
+	}
+
+	private static volatile boolean counting;
+
+	/**
+	 * How many glows have been drawn into sprites by the {@link SpriteCache}, each
+	 * of which costs one {@link javafx.scene.effect.DropShadow} blur.
+	 */
+	private static long glowsRendered;
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	static boolean isCounting() {
+		return counting;
+	}
+
+	static void setCounting(boolean counting) {
+		Instrumentation.counting = counting;
+	}
+
+	static void glowRendered() {
+		glowsRendered++;
+	}
+
+	static long getGlowsRendered() {
+		return glowsRendered;
+	}
+
+	/**
+	 * @return How many bytes the current thread has allocated so far, or
+	 *         <code>-1</code> if the JVM can't tell.
+	 */
+	static long allocatedBytes() {
+		return THREADS instanceof com.sun.management.ThreadMXBean
+				? ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId())
+				: -1;
+	}
+
+	private Instrumentation() {
+	}
+
+}
@@ -0,0 +1,257 @@
+package org.alixia.games.diplomacy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Plays many games on a {@link GameServer} at once, each client in a session of
+ * its own playing every team with random moves, and reports how long the server
+ * took to send each batch of moves back. With no port given, a server is
+ * started in the same JVM, on the loopback address.
+ * <p>
+ * All of the clients share one thread and one {@link Selector}, so thousands of
+ * them can be run without thousands of threads. Each client keeps its own copy
+ * of its game, made from the moves that the server sends, and picks its next
+ * moves from that, so any move the server rejects means that the two copies
+ * disagree.
+ */
+public final class LoadGenerator {
+
+	private final class Client {
+		private final SocketChannel channel;
+		private final SelectionKey key;
+		private final SplittableRandom random;
+		private final MoveGenerator generator = MoveGenerator.forSize(size);
+		private final BoardState state = new BoardState(size), scratch = new BoardState(size);
+		private final long[] buffer = new long[generator.getMaxMoves()], batch = new long[batchSize];
+		private ByteBuffer in = ByteBuffer.allocate(1 << 10), out;
+		private int movesLeft = movesPerClient, awaiting;
+		private long sentAt;
+
+		private Client(int session, long seed) throws IOException {
+			channel = SocketChannel.open(address);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			channel.configureBlocking(false);
+			key = channel.register(selector, SelectionKey.OP_READ, this);
+			random = new SplittableRandom(seed);
+			send(Protocol.join(session, size, (1 << BoardState.TEAM_COUNT) - 1));
+		}
+
+		private void read() throws IOException {
+			if (channel.read(in) == -1)
+				throw new IOException("Server closed the connection.");
+			in.flip();
+			for (ByteBuffer frame; (frame = Protocol.nextFrame(in)) != null;)
+				switch (frame.get()) {
+				case Protocol.STATE:
+					frame.getInt();
+					PackedBoard.read(frame).unpack(state);
+					sendMoves();
+					break;
+				case Protocol.MOVES_MADE:
+					for (long move : Protocol.readMoves(frame)) {
+						state.apply(move);
+						awaiting--;
+					}
+					if (awaiting == 0) {
+						latencies[latencyCount++] = System.nanoTime() - sentAt;
+						sendMoves();
+					}
+					break;
+				default:
+					throw new IOException("Server did not accept a move.");
+				}
+			in.compact();
+			in = Protocol.grow(in);
+		}
+
+		/**
+		 * Sends the next batch of moves, planned on a copy of the game, or stops if
+		 * the client is out of moves or the game is over.
+		 */
+		private void sendMoves() throws IOException {
+			if (movesLeft <= 0 || state.teamsRemaining() <= 1) {
+				finish();
+				return;
+			}
+			scratch.copyFrom(state);
+			int count = 0;
+			while (count < batch.length && count < movesLeft && scratch.teamsRemaining() > 1) {
+				int moves = generator.generateMoves(scratch, buffer);
+				long move = moves == 0 ? Moves.PASS : buffer[random.nextInt(moves)];
+				scratch.apply(move);
+				batch[count++] = move;
+			}
+			movesLeft -= count;
+			awaiting = count;
+			sentAt = System.nanoTime();
+			send(Protocol.moves(Protocol.MOVES, batch, count));
+		}
+
+		private void send(ByteBuffer frame) throws IOException {
+			channel.write(frame);
+			if (frame.hasRemaining()) {
+				out = frame;
+				key.interestOps(SelectionKey.OP_WRITE);
+			}
+		}
+
+		private void write() throws IOException {
+			channel.write(out);
+			if (!out.hasRemaining()) {
+				out = null;
+				key.interestOps(SelectionKey.OP_READ);
+			}
+		}
+
+		private void finish() throws IOException {
+			key.cancel();
+			channel.close();
+			finished++;
+		}
+	}
+
+	private final InetSocketAddress address;
+	private final int size, movesPerClient, batchSize;
+	private final Selector selector;
+	private long[] latencies;
+	private int latencyCount, finished;
+
+	/**
+	 * @param movesPerClient
+	 *            How many moves each client makes, unless its game ends first.
+	 * @param batchSize
+	 *            How many moves each client sends at once.
+	 */
+	public LoadGenerator(InetSocketAddress address, int size, int movesPerClient, int batchSize) throws IOException {
+		this.address = address;
+		this.size = size;
+		this.movesPerClient = movesPerClient;
+		this.batchSize = batchSize;
+		selector = Selector.open();
+	}
+
+	/**
+	 * Connects the clients and runs them until every one has finished.
+	 *
+	 * @param firstSession
+	 *            The session that the first client joins. Each client after it
+	 *            joins the next one.
+	 */
+	public Results run(int clients, int firstSession, long seed) throws IOException {
+		latencies = new long[clients * ((movesPerClient + batchSize - 1) / batchSize)];
+		latencyCount = finished = 0;
+		SplittableRandom seeds = new SplittableRandom(seed);
+		long start = System.nanoTime();
+		for (int i = 0; i < clients; i++)
+			new Client(firstSession + i, seeds.nextLong());
+
+		while (finished < clients) {
+			if (selector.select(10_000) == 0)
+				throw new IOException("No response from the server in 10 seconds; " + (clients - finished)
+						+ " clients are still waiting.");
+			for (Iterator<SelectionKey> iterator = selector.selectedKeys().iterator(); iterator.hasNext();) {
+				SelectionKey key = iterator.next();
+				iterator.remove();
+				Client client = (Client) key.attachment();
+				if (key.isValid() && key.isWritable())
+					client.write();
+				if (key.isValid() && key.isReadable())
+					client.read();
+			}
+		}
+		return new Results(clients, batchSize, Arrays.copyOf(latencies, latencyCount), System.nanoTime() - start);
+	}
+
+	public static final class Results {
+		private final int clients, batchSize;
+		private final long[] latencies;
+		private final long nanos;
+
+		private Results(int clients, int batchSize, long[] latencies, long nanos) {
+			this.clients = clients;
+			this.batchSize = batchSize;
+			this.latencies = latencies;
+			this.nanos = nanos;
+			Arrays.sort(latencies);
+		}
+
+		/**
+		 * @return The given percentile of the time, in nanoseconds, between a batch
+		 *         of moves being sent and all of them being sent back.
+		 */
+		public long getLatencyPercentile(double percentile) {
+			return latencies.length == 0 ? 0
+					: latencies[Math.min(latencies.length - 1, (int) (latencies.length * percentile / 100))];
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT,
+					"%d clients, %d batches of up to %d moves in %.2fs (%.0f batches/s), latency p50 %.1fus, p99 %.1fus",
+					clients, latencies.length, batchSize, nanos / 1e9, latencies.length / (nanos / 1e9),
+					getLatencyPercentile(50) / 1e3, getLatencyPercentile(99) / 1e3);
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		String host = "127.0.0.1";
+		int port = 0, clients = 1000, moves = 200, batch = 1, size = 8;
+		long seed = 0;
+		for (int i = 0; i + 1 < args.length; i += 2)
+			switch (args[i]) {
+			case "--host":
+				host = args[i + 1];
+				break;
+			case "--port":
+				port = Integer.parseInt(args[i + 1]);
+				break;
+			case "--clients":
+				clients = Integer.parseInt(args[i + 1]);
+				break;
+			case "--moves":
+				moves = Integer.parseInt(args[i + 1]);
+				break;
+			case "--batch":
+				batch = Integer.parseInt(args[i + 1]);
+				break;
+			case "--size":
+				size = Integer.parseInt(args[i + 1]);
+				break;
+			case "--seed":
+				seed = Long.parseLong(args[i + 1]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+
+		GameServer server = null;
+		InetSocketAddress address = new InetSocketAddress(host, port);
+		if (port == 0) {
+			server = new GameServer(address);
+			address = server.getAddress();
+			Thread thread = new Thread(server, "Game server");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		try {
+			LoadGenerator generator = new LoadGenerator(address, size, moves, batch);
+			// Warm up so that the reported latency isn't mostly the JIT.
+			generator.run(clients, 0, seed);
+			System.out.println(generator.run(clients, clients, seed));
+		} finally {
+			if (server != null)
+				server.close();
+		}
+	}
+
+}
@@ -0,0 +1,173 @@
+package org.alixia.games.diplomacy;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides which moves are legal on a {@link BoardState}, and lists them.
+ * <p>
+ * A team whose turn starts with a piece queued must first either place it in
+ * an empty cell or use it to claim an unclaimed tower. After that, it either
+ * moves one of its pieces to a neighboring cell (including diagonals), or spends
+ * one of its towers to spawn a piece in a neighboring cell. Either way, the
+ * target cell may hold anything except something of the moving team's own, and
+ * whatever was there is replaced.
+ * <p>
+ * Each generator has a table of every cell's neighbors, built once per board
+ * size, so generating moves is just a walk over the team's bitboard and the
+ * neighbors of each of its cells, with no bounds checks or allocation.
+ * Generators are shared; get one with {@link #forSize(int)}.
+ */
+public final class MoveGenerator {
+
+	/**
+	 * The most cells that any one cell can reach in a single move.
+	 */
+	public static final int MAX_REACH = 8;
+
+	private static final ConcurrentHashMap<Integer, MoveGenerator> GENERATORS = new ConcurrentHashMap<>();
+
+	public static MoveGenerator forSize(int size) {
+		return GENERATORS.computeIfAbsent(size, MoveGenerator::new);
+	}
+
+	private final int size, cellCount;
+	/**
+	 * The cells reachable from each cell, {@link #MAX_REACH} slots per cell, with
+	 * unused slots (on the edges of the board) set to <code>-1</code>.
+	 */
+	private final int[] reach;
+	/**
+	 * Every bit that is a real cell, for masking the end of the last bitboard
+	 * word.
+	 */
+	private final long lastWordMask;
+
+	private MoveGenerator(int size) {
+		this.size = size;
+		cellCount = size * size;
+		reach = new int[cellCount * MAX_REACH];
+		for (int row = 0, cell = 0; row < size; row++)
+			for (int col = 0; col < size; col++, cell++) {
+				int slot = cell * MAX_REACH;
+				for (int dr = -1; dr <= 1; dr++)
+					for (int dc = -1; dc <= 1; dc++)
+						if ((dr != 0 || dc != 0) && row + dr >= 0 && row + dr < size && col + dc >= 0
+								&& col + dc < size)
+							reach[slot++] = (row + dr) * size + col + dc;
+				while (slot < (cell + 1) * MAX_REACH)
+					reach[slot++] = -1;
+			}
+		lastWordMask = (cellCount & 63) == 0 ? -1L : (1L << cellCount) - 1;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * @return How large a move buffer needs to be to hold every move that can be
+	 *         generated on this generator's board size.
+	 */
+	public int getMaxMoves() {
+		return cellCount * MAX_REACH;
+	}
+
+	/**
+	 * @return Whether a piece at <code>from</code> could move to <code>to</code>,
+	 *         were nothing in the way.
+	 */
+	public boolean isReachable(int from, int to) {
+		for (int slot = from * MAX_REACH, end = slot + MAX_REACH; slot < end && reach[slot] != -1; slot++)
+			if (reach[slot] == to)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Writes every move available to the team whose turn it is into
+	 * <code>buffer</code>, starting at index <code>0</code>.
+	 *
+	 * @return The number of moves written.
+	 */
+	public int generateMoves(BoardState state, long[] buffer) {
+		int team = state.getCurrentTeam();
+		return team == BoardState.NO_TEAM ? 0 : generateMoves(state, team, buffer);
+	}
+
+	/**
+	 * Writes every move available to the given team into <code>buffer</code>,
+	 * starting at index <code>0</code>. If it is the team's turn and it has a
+	 * piece queued, only placements and claims are generated. Otherwise, only
+	 * piece moves and tower spawns are.
+	 *
+	 * @return The number of moves written.
+	 */
+	public int generateMoves(BoardState state, int team, long[] buffer) {
+		int count = 0;
+		long[] own = state.teamBoard(team);
+
+		if (team == state.getCurrentTeam() && state.isPieceQueued()) {
+			long[] red = state.teamBoard(BoardState.RED), white = state.teamBoard(BoardState.WHITE),
+					blue = state.teamBoard(BoardState.BLUE),
+					unclaimed = state.typeBoard(BoardState.UNCLAIMED_TOWER);
+			for (int word = 0; word < own.length; word++) {
+				long empty = ~(red[word] | white[word] | blue[word] | unclaimed[word]);
+				if (word == own.length - 1)
+					empty &= lastWordMask;
+				for (long bits = empty; bits != 0; bits &= bits - 1) {
+					int cell = word << 6 | Long.numberOfTrailingZeros(bits);
+					buffer[count++] = Moves.of(Moves.PLACE, cell, cell);
+				}
+				for (long bits = unclaimed[word]; bits != 0; bits &= bits - 1) {
+					int cell = word << 6 | Long.numberOfTrailingZeros(bits);
+					buffer[count++] = Moves.of(Moves.CLAIM, cell, cell);
+				}
+			}
+			return count;
+		}
+
+		long[] towers = state.typeBoard(BoardState.towerOf(team));
+		for (int word = 0; word < own.length; word++)
+			for (long bits = own[word]; bits != 0; bits &= bits - 1) {
+				int from = word << 6 | Long.numberOfTrailingZeros(bits);
+				long base = Moves.of((towers[word] & bits & -bits) != 0 ? Moves.SPAWN : Moves.MOVE, from, 0);
+				for (int slot = from * MAX_REACH, end = slot + MAX_REACH; slot < end; slot++) {
+					int to = reach[slot];
+					if (to == -1)
+						break;
+					if ((own[to >>> 6] & 1L << to) == 0)
+						buffer[count++] = base | to;
+				}
+			}
+		return count;
+	}
+
+	/**
+	 * @return Whether the given move, as encoded by {@link Moves}, may be made by
+	 *         the team whose turn it is. {@link Moves#PASS} is never legal.
+	 */
+	public boolean isLegal(BoardState state, long move) {
+		int team = state.getCurrentTeam();
+		if (move == Moves.PASS || team == BoardState.NO_TEAM)
+			return false;
+		int from = Moves.from(move), to = Moves.to(move);
+		if (from >= cellCount || to >= cellCount)
+			return false;
+
+		switch (Moves.kind(move)) {
+		case Moves.PLACE:
+			return state.isPieceQueued() && from == to && state.get(to) == BoardState.EMPTY;
+		case Moves.CLAIM:
+			return state.isPieceQueued() && from == to && state.get(to) == BoardState.UNCLAIMED_TOWER;
+		case Moves.MOVE:
+			return !state.isPieceQueued() && state.get(from) == BoardState.pieceOf(team)
+					&& BoardState.teamOf(state.get(to)) != team && isReachable(from, to);
+		case Moves.SPAWN:
+			return !state.isPieceQueued() && state.get(from) == BoardState.towerOf(team)
+					&& BoardState.teamOf(state.get(to)) != team && isReachable(from, to);
+		default:
+			return false;
+		}
+	}
+
+}
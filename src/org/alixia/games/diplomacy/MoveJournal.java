@@ -0,0 +1,417 @@
+package org.alixia.games.diplomacy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An append-only binary record of every move made in a game, from which the
+ * game can be replayed to any point.
+ * <p>
+ * A journal starts with a header (see {@link #MAGIC}) giving the board size and
+ * how often snapshots are taken. After that, it's a run of records, each
+ * starting with a tag byte. The lowest 3 bits of the tag are the record's kind
+ * (one of the {@link Moves} kinds, {@link #PASS} or {@link #SNAPSHOT}), and the
+ * next 2 are the team that made the move. For a {@link Moves#MOVE} or
+ * {@link Moves#SPAWN}, the top 3 bits say which neighbor of the source cell the
+ * target is, so only the source cell follows. For a {@link Moves#CLAIM} or
+ * {@link Moves#PLACE}, only the target cell follows. Cells are written as
+ * varints, so that a move on a small board takes 2 bytes.
+ * <p>
+ * Before the first move, and every {@link Reader#getSnapshotInterval()
+ * interval} moves after the last snapshot, a full snapshot of the board is
+ * written: the number of moves before it, and then the game as a
+ * {@link PackedBoard}. A
+ * snapshot is also written whenever the game jumps to a state that its moves
+ * don't lead to, such as when moves are undone (see
+ * {@link Writer#restart(BoardState)}). A {@link Reader} seeks to a turn by
+ * restoring the last snapshot before it and replaying the few moves after that.
+ * <p>
+ * Readers map the whole file into memory, so a journal may be at most 2GB.
+ */
+public final class MoveJournal {
+
+	/**
+	 * The first 4 bytes of every journal, followed by a byte for the
+	 * {@link #VERSION}, an <code>int</code> for the board size and another for the
+	 * snapshot interval.
+	 */
+	private static final int MAGIC = 'D' << 24 | 'I' << 16 | 'P' << 8 | 'J';
+	private static final byte VERSION = 2;
+	private static final int HEADER_BYTES = 13;
+
+	/**
+	 * The kind of record for a {@link Moves#PASS}.
+	 */
+	private static final int PASS = 4;
+	/**
+	 * The kind of record for a full snapshot of the board.
+	 */
+	private static final int SNAPSHOT = 7;
+
+	private static final int KIND_MASK = 7, TEAM_SHIFT = 3, TEAM_MASK = 3, DIRECTION_SHIFT = 5;
+
+	/**
+	 * The offsets of each of a cell's neighbors, indexed by the direction stored
+	 * in a move's tag.
+	 */
+	private static final int[] DIRECTION_ROWS = { -1, -1, -1, 0, 0, 1, 1, 1 },
+			DIRECTION_COLS = { -1, 0, 1, -1, 1, -1, 0, 1 };
+
+	/**
+	 * The most bytes any record other than a snapshot can take.
+	 */
+	private static final int MAX_MOVE_BYTES = 1 + 5;
+
+	public static final int DEFAULT_SNAPSHOT_INTERVAL = 256;
+
+	private static int direction(int size, int from, int to) {
+		int dr = to / size - from / size, dc = to % size - from % size;
+		for (int i = 0; i < DIRECTION_ROWS.length; i++)
+			if (DIRECTION_ROWS[i] == dr && DIRECTION_COLS[i] == dc)
+				return i;
+		throw new IllegalArgumentException("Cells " + from + " and " + to + " are not neighbors.");
+	}
+
+	private static void putVarint(ByteBuffer buffer, int value) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static int getVarint(ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0;; shift += 7) {
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0)
+				return value;
+		}
+	}
+
+	/**
+	 * Appends moves to a journal file, replacing whatever was in it.
+	 */
+	public static final class Writer implements Closeable {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+		private final int size, interval;
+		private int moveCount;
+		/**
+		 * How many moves have been written since the last snapshot, or
+		 * <code>-1</code> if no snapshot has been written yet.
+		 */
+		private int sinceSnapshot = -1;
+		/**
+		 * Where in the file the last snapshot starts.
+		 */
+		private long lastSnapshot;
+
+		public Writer(Path path, int size) throws IOException {
+			this(path, size, DEFAULT_SNAPSHOT_INTERVAL);
+		}
+
+		/**
+		 * @param size
+		 *            How many cells wide and tall the game's board is.
+		 * @param snapshotInterval
+		 *            How many moves to write between snapshots. Fewer means faster
+		 *            seeking but larger files.
+		 */
+		public Writer(Path path, int size, int snapshotInterval) throws IOException {
+			if (snapshotInterval < 1)
+				throw new IllegalArgumentException("Snapshot interval must be positive: " + snapshotInterval);
+			this.size = size;
+			interval = snapshotInterval;
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+					StandardOpenOption.WRITE);
+			buffer.putInt(MAGIC).put(VERSION).putInt(size).putInt(interval);
+		}
+
+		public int getMoveCount() {
+			return moveCount;
+		}
+
+		/**
+		 * Records a move, as encoded by {@link Moves}. This must be called before the
+		 * move is made, since a snapshot of the board may be written first.
+		 *
+		 * @param state
+		 *            The game, as it is before the move.
+		 */
+		public void append(BoardState state, long move) throws IOException {
+			if (state.getSize() != size)
+				throw new IllegalArgumentException("Board size " + state.getSize() + " does not match the journal's.");
+			if (sinceSnapshot < 0 || sinceSnapshot >= interval)
+				writeSnapshot(state);
+
+			reserve(MAX_MOVE_BYTES);
+			int team = state.getCurrentTeam() << TEAM_SHIFT;
+			if (move == Moves.PASS)
+				buffer.put((byte) (PASS | team));
+			else {
+				int kind = Moves.kind(move), from = Moves.from(move), to = Moves.to(move);
+				if (kind == Moves.MOVE || kind == Moves.SPAWN) {
+					buffer.put((byte) (kind | team | direction(size, from, to) << DIRECTION_SHIFT));
+					putVarint(buffer, from);
+				} else {
+					buffer.put((byte) (kind | team));
+					putVarint(buffer, to);
+				}
+			}
+			moveCount++;
+			sinceSnapshot++;
+		}
+
+		/**
+		 * Writes a snapshot of the game right away, for when it has been put into a
+		 * state that the moves written so far don't lead to. Replaying the journal
+		 * to this point gives the new state, and the moves after it are replayed from
+		 * there.
+		 * <p>
+		 * If no moves were written since the last snapshot, such as when several
+		 * moves are undone one after another, that snapshot is replaced, since
+		 * nothing could be replayed from it.
+		 */
+		public void restart(BoardState state) throws IOException {
+			if (state.getSize() != size)
+				throw new IllegalArgumentException("Board size " + state.getSize() + " does not match the journal's.");
+			if (sinceSnapshot == 0) {
+				long buffered = channel.position();
+				if (lastSnapshot >= buffered)
+					buffer.position((int) (lastSnapshot - buffered));
+				else {
+					drain();
+					channel.truncate(lastSnapshot);
+					channel.position(lastSnapshot);
+				}
+			}
+			writeSnapshot(state);
+		}
+
+		private void writeSnapshot(BoardState state) throws IOException {
+			reserve(1 + 5);
+			lastSnapshot = channel.position() + buffer.position();
+			buffer.put((byte) SNAPSHOT);
+			putVarint(buffer, moveCount);
+			sinceSnapshot = 0;
+
+			PackedBoard board = PackedBoard.of(state);
+			int bytes = PackedBoard.byteCount(size);
+			if (bytes <= buffer.capacity()) {
+				reserve(bytes);
+				board.write(buffer);
+			} else {
+				// Too large to buffer, so it's written straight out.
+				drain();
+				ByteBuffer out = ByteBuffer.allocate(bytes);
+				board.write(out);
+				out.flip();
+				while (out.hasRemaining())
+					channel.write(out);
+			}
+		}
+
+		/**
+		 * Makes sure that the buffer has room for the given number of bytes, writing
+		 * it out if it doesn't.
+		 */
+		private void reserve(int bytes) throws IOException {
+			if (buffer.remaining() < bytes)
+				drain();
+		}
+
+		private void drain() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+
+		/**
+		 * Writes every recorded move out to the file.
+		 */
+		public void flush() throws IOException {
+			drain();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				drain();
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Reads a journal file by mapping it into memory. The file is scanned once,
+	 * when the reader is made, to find where each snapshot is.
+	 */
+	public static final class Reader implements Closeable {
+
+		private final FileChannel channel;
+		private final MappedByteBuffer data;
+		private final int size, interval, moveCount;
+		/**
+		 * The position of every snapshot in {@link #data}, and the number of moves
+		 * that were written before each one, in the order they were written.
+		 */
+		private final int[] snapshots, snapshotTurns;
+
+		public Reader(Path path) throws IOException {
+			channel = FileChannel.open(path, StandardOpenOption.READ);
+			try {
+				if (channel.size() > Integer.MAX_VALUE)
+					throw new IOException("Journal is too large to map: " + path);
+				data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if (data.remaining() < HEADER_BYTES || data.getInt() != MAGIC)
+					throw new IOException("Not a move journal: " + path);
+				if (data.get() != VERSION)
+					throw new IOException("Unsupported move journal version: " + path);
+				size = data.getInt();
+				interval = data.getInt();
+
+				int[] snapshots = new int[16], snapshotTurns = new int[16];
+				int snapshotCount = 0, moves = 0;
+				while (data.hasRemaining()) {
+					int position = data.position(), tag = data.get() & 0xFF;
+					if ((tag & KIND_MASK) == SNAPSHOT) {
+						if (snapshotCount == snapshots.length) {
+							snapshots = Arrays.copyOf(snapshots, snapshotCount * 2);
+							snapshotTurns = Arrays.copyOf(snapshotTurns, snapshotCount * 2);
+						}
+						snapshots[snapshotCount] = position;
+						snapshotTurns[snapshotCount++] = getVarint(data);
+						data.position(data.position() + PackedBoard.byteCount(size));
+					} else {
+						if ((tag & KIND_MASK) != PASS)
+							getVarint(data);
+						moves++;
+					}
+				}
+				this.snapshots = Arrays.copyOf(snapshots, snapshotCount);
+				this.snapshotTurns = Arrays.copyOf(snapshotTurns, snapshotCount);
+				moveCount = moves;
+			} catch (IOException | RuntimeException e) {
+				channel.close();
+				throw e;
+			}
+		}
+
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 * @return The most moves that were written between two snapshots.
+		 */
+		public int getSnapshotInterval() {
+			return interval;
+		}
+
+		/**
+		 * @return How many moves are in the journal.
+		 */
+		public int getMoveCount() {
+			return moveCount;
+		}
+
+		/**
+		 * Puts a game into the state it was in after the given number of moves, or,
+		 * if the game {@link Writer#restart(BoardState) jumped} to another state
+		 * after that many moves, into the state it jumped to last.
+		 *
+		 * @param turn
+		 *            How many moves to have made, from <code>0</code> up to and
+		 *            including {@link #getMoveCount()}.
+		 * @param state
+		 *            The game to restore into. It must be the size of the
+		 *            journal's board. If the journal has no moves, this is left as
+		 *            it is.
+		 */
+		public void seek(int turn, BoardState state) {
+			if (turn < 0 || turn > moveCount)
+				throw new IndexOutOfBoundsException("Turn " + turn + " of " + moveCount);
+			if (state.getSize() != size)
+				throw new IllegalArgumentException("Board size " + state.getSize() + " does not match the journal's.");
+			if (snapshots.length == 0)
+				return;
+			// Find the last snapshot taken at or before the turn.
+			int low = 0, high = snapshots.length - 1;
+			while (low < high) {
+				int mid = low + high + 1 >>> 1;
+				if (snapshotTurns[mid] <= turn)
+					low = mid;
+				else
+					high = mid - 1;
+			}
+
+			ByteBuffer in = data.duplicate();
+			in.position(snapshots[low] + 1);
+			int moves = getVarint(in);
+			PackedBoard.read(in).unpack(state);
+
+			for (; moves < turn; moves++)
+				state.apply(readMove(in, state));
+		}
+
+		/**
+		 * @return Every move in the journal, in order, as encoded by {@link Moves}.
+		 */
+		public long[] getMoves() {
+			long[] moves = new long[moveCount];
+			ByteBuffer in = data.duplicate();
+			in.position(HEADER_BYTES);
+			for (int i = 0; i < moveCount; i++)
+				moves[i] = readMove(in, null);
+			return moves;
+		}
+
+		/**
+		 * Reads the next move, skipping over any snapshots before it. There can be
+		 * several in a row, such as when moves are undone one after another.
+		 *
+		 * @param state
+		 *            The game that the move is about to be made on, to check that
+		 *            it's the right team's turn, or <code>null</code> to not check.
+		 */
+		private long readMove(ByteBuffer in, BoardState state) {
+			int tag = in.get() & 0xFF;
+			while ((tag & KIND_MASK) == SNAPSHOT) {
+				getVarint(in);
+				in.position(in.position() + PackedBoard.byteCount(size));
+				tag = in.get() & 0xFF;
+			}
+			if (state != null && (tag >>> TEAM_SHIFT & TEAM_MASK) != state.getCurrentTeam())
+				throw new IllegalStateException("Journal move is for a team whose turn it isn't.");
+
+			int kind = tag & KIND_MASK;
+			if (kind == PASS)
+				return Moves.PASS;
+			int cell = getVarint(in);
+			if (kind == Moves.CLAIM || kind == Moves.PLACE)
+				return Moves.of(kind, cell, cell);
+			int direction = tag >>> DIRECTION_SHIFT & 7;
+			return Moves.of(kind, cell, cell + DIRECTION_ROWS[direction] * size + DIRECTION_COLS[direction]);
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+
+	private MoveJournal() {
+	}
+
+}
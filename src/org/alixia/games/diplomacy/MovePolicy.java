@@ -0,0 +1,57 @@
+package org.alixia.games.diplomacy;
+
+import java.util.SplittableRandom;
+
+/**
+ * Decides which move a team makes, given every move it has available. Policies
+ * are shared between threads, so implementations must not keep any state of
+ * their own; anything random should come from the supplied generator.
+ */
+@FunctionalInterface
+public interface MovePolicy {
+
+	/**
+	 * Picks a move.
+	 *
+	 * @param state
+	 *            The current state of the game. This must not be modified.
+	 * @param moves
+	 *            The available moves, as encoded by {@link Moves}.
+	 * @param count
+	 *            How many of the entries in <code>moves</code> are valid. This is
+	 *            always at least one.
+	 * @param random
+	 *            The random number generator for the game being played.
+	 * @return The chosen move.
+	 */
+	long choose(BoardState state, long[] moves, int count, SplittableRandom random);
+
+	/**
+	 * Picks any available move with equal probability.
+	 */
+	MovePolicy RANDOM = (state, moves, count, random) -> moves[random.nextInt(count)];
+
+	/**
+	 * Takes the move that replaces the most valuable enemy entity, favoring towers
+	 * over pieces, and otherwise picks randomly.
+	 */
+	MovePolicy GREEDY = (state, moves, count, random) -> {
+		long best = moves[random.nextInt(count)];
+		int bestValue = 0, team = state.getCurrentTeam();
+		for (int i = 0; i < count; i++) {
+			int target = state.get(Moves.to(moves[i])), value;
+			if (target == BoardState.EMPTY || BoardState.teamOf(target) == team)
+				value = 0;
+			else if (target == BoardState.UNCLAIMED_TOWER)
+				value = 2;
+			else
+				value = BoardState.isTower(target) ? 3 : 1;
+			if (value > bestValue) {
+				bestValue = value;
+				best = moves[i];
+			}
+		}
+		return best;
+	};
+
+}
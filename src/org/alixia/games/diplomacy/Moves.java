@@ -0,0 +1,84 @@
+package org.alixia.games.diplomacy;
+
+/**
+ * Encodes moves on a {@link BoardState} as single <code>long</code>s so that
+ * they can be generated into and read out of primitive buffers. The target
+ * cell takes the lowest 24 bits, the source cell the next 24, and the kind of
+ * move the 3 bits above those.
+ */
+public final class Moves {
+
+	/**
+	 * A piece moving from one cell to another, ending the turn.
+	 */
+	public static final int MOVE = 0;
+	/**
+	 * A tower being spent to put a new piece in another cell, ending the turn.
+	 */
+	public static final int SPAWN = 1;
+	/**
+	 * The queued piece claiming an unclaimed tower. The source cell is the same as
+	 * the target.
+	 */
+	public static final int CLAIM = 2;
+	/**
+	 * The queued piece being put in an empty cell. The source cell is the same as
+	 * the target.
+	 */
+	public static final int PLACE = 3;
+
+	/**
+	 * Not a real move; the team gives up the rest of its turn. This is only used
+	 * when a team has nothing else it can do.
+	 */
+	public static final long PASS = -1;
+
+	private static final int CELL_BITS = 24;
+	private static final long CELL_MASK = (1L << CELL_BITS) - 1;
+
+	public static long of(int kind, int from, int to) {
+		return (long) kind << CELL_BITS * 2 | (long) from << CELL_BITS | to;
+	}
+
+	public static int kind(long move) {
+		return (int) (move >>> CELL_BITS * 2);
+	}
+
+	public static int from(long move) {
+		return (int) (move >>> CELL_BITS & CELL_MASK);
+	}
+
+	public static int to(long move) {
+		return (int) (move & CELL_MASK);
+	}
+
+	/**
+	 * @return Whether the given move ends the turn of the team making it.
+	 */
+	public static boolean endsTurn(long move) {
+		return move == PASS || kind(move) <= SPAWN;
+	}
+
+	public static String toString(long move, int boardSize) {
+		if (move == PASS)
+			return "pass";
+		int from = from(move), to = to(move);
+		String target = "(" + to / boardSize + ", " + to % boardSize + ")";
+		switch (kind(move)) {
+		case MOVE:
+			return "move (" + from / boardSize + ", " + from % boardSize + ") to " + target;
+		case SPAWN:
+			return "spawn from (" + from / boardSize + ", " + from % boardSize + ") at " + target;
+		case CLAIM:
+			return "claim " + target;
+		case PLACE:
+			return "place " + target;
+		default:
+			return "unknown move " + Long.toHexString(move);
+		}
+	}
+
+	private Moves() {
+	}
+
+}
@@ -0,0 +1,146 @@
+package org.alixia.games.diplomacy;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A whole game, packed as tightly as is still fast to read: every cell's type
+ * code in {@link #BITS_PER_CELL} bits, {@link #CELLS_PER_WORD} cells to a
+ * <code>long</code>, after one header word holding the board size, the current
+ * team, the queued piece and whether teams are placing. An 8 by 8 board takes
+ * 40 bytes.
+ * <p>
+ * This is how games are stored and sent anywhere outside of a running
+ * {@link BoardState}. Packed boards are immutable, and are equal (and hash the
+ * same) exactly when the games they hold are the same. They're written to
+ * {@link ByteBuffer}s with one bulk transfer of <code>long</code>s, in the
+ * buffer's byte order. Reading copies the words out of the buffer the same way,
+ * into an array of the board's own, once: a board often outlives the buffer it
+ * was read from, which is usually reused for the next message.
+ */
+public final class PackedBoard {
+
+	public static final int BITS_PER_CELL = 3, CELLS_PER_WORD = Long.SIZE / BITS_PER_CELL;
+	private static final long CELL_MASK = (1 << BITS_PER_CELL) - 1;
+
+	private static final int SIZE_BITS = 24, TEAM_SHIFT = SIZE_BITS, QUEUED_SHIFT = TEAM_SHIFT + 2,
+			PLACING_SHIFT = QUEUED_SHIFT + BITS_PER_CELL;
+
+	/**
+	 * The header word, and then the cells, with cell <code>i</code> in word
+	 * <code>1 + i / CELLS_PER_WORD</code>.
+	 */
+	private final long[] words;
+
+	private PackedBoard(long[] words) {
+		this.words = words;
+	}
+
+	/**
+	 * @return How many <code>long</code>s a packed board of the given size takes.
+	 */
+	public static int wordCount(int size) {
+		return 1 + (size * size + CELLS_PER_WORD - 1) / CELLS_PER_WORD;
+	}
+
+	/**
+	 * @return How many bytes a packed board of the given size takes in a
+	 *         {@link ByteBuffer}.
+	 */
+	public static int byteCount(int size) {
+		return wordCount(size) * Long.BYTES;
+	}
+
+	public static PackedBoard of(BoardState state) {
+		long[] words = new long[wordCount(state.getSize())];
+		words[0] = state.getSize() | (long) (state.getCurrentTeam() + 1) << TEAM_SHIFT
+				| (long) state.getQueued() << QUEUED_SHIFT | (state.isPlacing() ? 1L : 0) << PLACING_SHIFT;
+		for (int cell = 0, cells = state.getCellCount(); cell < cells; cell++)
+			words[1 + cell / CELLS_PER_WORD] |= (long) state.get(cell) << cell % CELLS_PER_WORD * BITS_PER_CELL;
+		return new PackedBoard(words);
+	}
+
+	/**
+	 * Reads a packed board from the buffer's position, moving the position past
+	 * it. The board keeps a copy of the words, so the buffer may be reused
+	 * afterwards.
+	 *
+	 * @throws IllegalArgumentException
+	 *             If the board's size is not a possible size.
+	 */
+	public static PackedBoard read(ByteBuffer buffer) {
+		long header = buffer.getLong();
+		int size = (int) (header & (1 << SIZE_BITS) - 1);
+		if (size < 2 || (long) size * size > 1 << SIZE_BITS)
+			throw new IllegalArgumentException("Not a packed board: size " + size);
+		long[] words = new long[wordCount(size)];
+		words[0] = header;
+		buffer.asLongBuffer().get(words, 1, words.length - 1);
+		buffer.position(buffer.position() + (words.length - 1) * Long.BYTES);
+		return new PackedBoard(words);
+	}
+
+	/**
+	 * Writes this board at the buffer's position, moving the position past it.
+	 * The buffer must have {@link #byteCount(int)} bytes remaining.
+	 */
+	public void write(ByteBuffer buffer) {
+		buffer.asLongBuffer().put(words);
+		buffer.position(buffer.position() + words.length * Long.BYTES);
+	}
+
+	public int getSize() {
+		return (int) (words[0] & (1 << SIZE_BITS) - 1);
+	}
+
+	public int getCurrentTeam() {
+		return (int) (words[0] >>> TEAM_SHIFT & 3) - 1;
+	}
+
+	public int getQueued() {
+		return (int) (words[0] >>> QUEUED_SHIFT & CELL_MASK);
+	}
+
+	public boolean isPlacing() {
+		return (words[0] >>> PLACING_SHIFT & 1) != 0;
+	}
+
+	/**
+	 * @return The type code in the given cell.
+	 */
+	public int get(int cell) {
+		return (int) (words[1 + cell / CELLS_PER_WORD] >>> cell % CELLS_PER_WORD * BITS_PER_CELL & CELL_MASK);
+	}
+
+	/**
+	 * Puts a game into the state that this board holds.
+	 *
+	 * @param state
+	 *            The game to change. It must be the same size as this board.
+	 */
+	public void unpack(BoardState state) {
+		if (state.getSize() != getSize())
+			throw new IllegalArgumentException("Board size " + state.getSize() + " does not match " + getSize() + ".");
+		state.clear();
+		for (int word = 1, first = 0; word < words.length; word++, first += CELLS_PER_WORD) {
+			long bits = words[word];
+			for (int cell = first; bits != 0; cell++, bits >>>= BITS_PER_CELL)
+				if ((bits & CELL_MASK) != BoardState.EMPTY)
+					state.put((int) (bits & CELL_MASK), cell);
+		}
+		state.setCurrentTeam(getCurrentTeam());
+		state.queue(getQueued());
+		state.setPlacing(isPlacing());
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj == this || obj instanceof PackedBoard && Arrays.equals(words, ((PackedBoard) obj).words);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(words);
+	}
+
+}
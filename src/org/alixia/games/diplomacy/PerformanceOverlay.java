@@ -0,0 +1,112 @@
+package org.alixia.games.diplomacy;
+
+import java.util.Locale;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.Node;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+
+/**
+ * Shows how fast the game is running, over the top of it: frames per second,
+ * how long the FX thread spends on each pulse, how long the last turn took to
+ * handle and how much it allocated, and how much there is to draw.
+ * <p>
+ * Nothing is measured while the overlay is hidden. While it's shown, the
+ * figures are updated a few times a second rather than every frame, so showing
+ * them barely changes them.
+ */
+final class PerformanceOverlay extends Label {
+
+	private static final long UPDATE_NANOS = 500_000_000;
+
+	private final Board board;
+
+	private long windowStart, pulseStart, pulseTotal, pulseMax;
+	private int frames, pulses;
+
+	/**
+	 * Starts each pulse's timing and counts frames. Animation timers run at the
+	 * start of a pulse, before layout.
+	 */
+	private final AnimationTimer timer = new AnimationTimer() {
+
+		@Override
+		public void handle(long now) {
+			pulseStart = System.nanoTime();
+			frames++;
+			if (windowStart == 0)
+				windowStart = now;
+			else if (now - windowStart >= UPDATE_NANOS) {
+				update(now - windowStart);
+				windowStart = now;
+			}
+		}
+	};
+
+	/**
+	 * Ends each pulse's timing, once the scene has been laid out. Drawing happens
+	 * after this, on the render thread.
+	 */
+	private final Runnable pulseEnd = () -> {
+		if (pulseStart == 0)
+			return;
+		long nanos = System.nanoTime() - pulseStart;
+		pulseStart = 0;
+		pulseTotal += nanos;
+		pulseMax = Math.max(pulseMax, nanos);
+		pulses++;
+	};
+
+	PerformanceOverlay(Board board) {
+		this.board = board;
+		setMouseTransparent(true);
+		setVisible(false);
+		setMaxSize(USE_PREF_SIZE, USE_PREF_SIZE);
+		setStyle("-fx-font-family: monospace; -fx-font-size: 13px; -fx-text-fill: white; "
+				+ "-fx-background-color: rgba(0, 0, 0, 0.6); -fx-padding: 4 8 4 8;");
+	}
+
+	/**
+	 * Shows the overlay if it's hidden, or hides it if it's shown. It must be in a
+	 * scene.
+	 */
+	void toggle() {
+		Scene scene = getScene();
+		if (isVisible()) {
+			timer.stop();
+			scene.removePostLayoutPulseListener(pulseEnd);
+			Instrumentation.setCounting(false);
+			setVisible(false);
+		} else {
+			windowStart = pulseStart = pulseTotal = pulseMax = frames = pulses = 0;
+			Instrumentation.setCounting(true);
+			scene.addPostLayoutPulseListener(pulseEnd);
+			timer.start();
+			setText("Measuring...");
+			setVisible(true);
+		}
+	}
+
+	private void update(long windowNanos) {
+		long turn = board.getLastTurnNanos(), allocated = board.getLastTurnAllocatedBytes();
+		setText(String.format(Locale.ROOT,
+				"%.0f fps, pulse %.2f ms (max %.2f ms)%nturn %s, %s allocated%n%d nodes, %d glowing, %d glows rendered",
+				frames * 1e9 / windowNanos, pulses == 0 ? 0 : pulseTotal / 1e6 / pulses, pulseMax / 1e6,
+				turn < 0 ? "-" : String.format(Locale.ROOT, "%.2f ms", turn / 1e6),
+				allocated < 0 ? "-" : allocated / 1024 + " KiB", countNodes(getScene().getRoot()),
+				board.getGlowingEntityCount(), Instrumentation.getGlowsRendered()));
+		frames = pulses = 0;
+		pulseTotal = pulseMax = 0;
+	}
+
+	private static int countNodes(Node node) {
+		int count = 1;
+		if (node instanceof Parent)
+			for (Node child : ((Parent) node).getChildrenUnmodifiable())
+				count += countNodes(child);
+		return count;
+	}
+
+}
@@ -0,0 +1,151 @@
+package org.alixia.games.diplomacy;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The messages that {@link GameServer}s and their clients send each other.
+ * <p>
+ * Every message is a frame: an <code>int</code> giving the length of the rest
+ * of the frame, a byte giving the kind of message, and then the message's
+ * fields. Moves are sent as encoded by {@link Moves}, and whole games as
+ * {@link PackedBoard}s. All numbers are big endian.
+ */
+final class Protocol {
+
+	/**
+	 * The most bytes a frame may take, not counting its length. Connections that
+	 * send larger frames are dropped.
+	 */
+	static final int MAX_FRAME_BYTES = 1 << 20;
+
+	static final int HEADER_BYTES = Integer.BYTES + 1;
+
+	/**
+	 * Client to server: <code>int</code> session, <code>int</code> board size,
+	 * byte mask of the teams to play (bit <code>1 &lt;&lt; team</code> for each).
+	 * <p>
+	 * Joins a session, making it with a new game of the given size if there is no
+	 * such session. A connection may play the teams it asks for if no other
+	 * connection plays them; a mask of <code>0</code> only watches. The server
+	 * answers with {@link #STATE}.
+	 */
+	static final byte JOIN = 1;
+	/**
+	 * Client to server: <code>short</code> count, then that many
+	 * <code>long</code> moves.
+	 * <p>
+	 * Makes moves, in order, in the connection's session. Each must be legal and
+	 * for a team that the connection plays when its turn comes. If one isn't, it
+	 * and every move after it in the batch are dropped and the sender gets
+	 * {@link #REJECTED}.
+	 */
+	static final byte MOVES = 2;
+
+	/**
+	 * Server to client: <code>int</code> session, then the game as a
+	 * {@link PackedBoard}.
+	 */
+	static final byte STATE = 16;
+	/**
+	 * Server to client: <code>short</code> count, then that many
+	 * <code>long</code> moves, which every client in the session should make, in
+	 * order.
+	 */
+	static final byte MOVES_MADE = 17;
+	/**
+	 * Server to client: <code>short</code> index, in the last batch the client
+	 * sent, of the move that was dropped.
+	 */
+	static final byte REJECTED = 18;
+	/**
+	 * Server to client: the problem, in UTF-8.
+	 */
+	static final byte ERROR = 19;
+
+	/**
+	 * @return A buffer for a frame of the given kind, with its header written and
+	 *         room for exactly <code>bytes</code> bytes of fields. Once they're
+	 *         written, the buffer must be flipped before it's sent.
+	 */
+	static ByteBuffer frame(byte kind, int bytes) {
+		return ByteBuffer.allocate(HEADER_BYTES + bytes).putInt(1 + bytes).put(kind);
+	}
+
+	static ByteBuffer join(int session, int size, int teams) {
+		return frame(JOIN, 9).putInt(session).putInt(size).put((byte) teams).flip();
+	}
+
+	static ByteBuffer moves(byte kind, long[] moves, int count) {
+		ByteBuffer frame = frame(kind, 2 + count * Long.BYTES).putShort((short) count);
+		for (int i = 0; i < count; i++)
+			frame.putLong(moves[i]);
+		return frame.flip();
+	}
+
+	static ByteBuffer state(int session, PackedBoard board) {
+		ByteBuffer frame = frame(STATE, 4 + PackedBoard.byteCount(board.getSize())).putInt(session);
+		board.write(frame);
+		return frame.flip();
+	}
+
+	static ByteBuffer rejected(int index) {
+		return frame(REJECTED, 2).putShort((short) index).flip();
+	}
+
+	static ByteBuffer error(String message) {
+		byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+		return frame(ERROR, bytes.length).put(bytes).flip();
+	}
+
+	/**
+	 * Takes the next whole frame out of a buffer of received bytes (that has been
+	 * flipped for reading).
+	 *
+	 * @return A buffer holding the frame's kind and fields, positioned at its
+	 *         kind, or <code>null</code> if the whole frame hasn't been received
+	 *         yet, in which case <code>in</code> is left as it was.
+	 * @throws IllegalStateException
+	 *             If the frame is larger than {@link #MAX_FRAME_BYTES}.
+	 */
+	static ByteBuffer nextFrame(ByteBuffer in) {
+		if (in.remaining() < Integer.BYTES)
+			return null;
+		int length = in.getInt(in.position());
+		if (length < 1 || length > MAX_FRAME_BYTES)
+			throw new IllegalStateException("Bad frame length: " + length);
+		if (in.remaining() < Integer.BYTES + length)
+			return null;
+		ByteBuffer frame = in.duplicate();
+		frame.position(in.position() + Integer.BYTES).limit(in.position() + Integer.BYTES + length);
+		in.position(frame.limit());
+		return frame;
+	}
+
+	/**
+	 * @return The moves in a {@link #MOVES} or {@link #MOVES_MADE} frame,
+	 *         positioned after its kind.
+	 */
+	static long[] readMoves(ByteBuffer frame) {
+		long[] moves = new long[frame.getShort() & 0xFFFF];
+		frame.asLongBuffer().get(moves);
+		return moves;
+	}
+
+	/**
+	 * @return A buffer that <code>in</code> can be compacted into that has room
+	 *         for at least one more byte: <code>in</code> itself if it has room,
+	 *         or a buffer twice its size otherwise.
+	 */
+	static ByteBuffer grow(ByteBuffer in) {
+		if (in.position() < in.capacity())
+			return in;
+		ByteBuffer bigger = ByteBuffer.allocate(in.capacity() * 2);
+		in.flip();
+		return bigger.put(in);
+	}
+
+	private Protocol() {
+	}
+
+}
@@ -0,0 +1,155 @@
+package org.alixia.games.diplomacy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.image.Image;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Loads and caches the game's images.
+ * <p>
+ * Every image is decoded once and then shared. {@link #loadAsync()} decodes
+ * everything the game needs in the background, already scaled down to the
+ * sizes it's drawn at in each supported window size, so that the FX thread
+ * never has to wait on a decode or rescale the full size images while drawing.
+ * The entity images for each of those sizes are also packed side by side into
+ * one {@link Atlas}, so that drawing any entity draws from the same texture.
+ * <p>
+ * Images that are asked for before they're loaded, or at sizes that weren't
+ * loaded ahead of time, are decoded on the spot, at full size.
+ */
+final class ResourceManager {
+
+	private static final String GRAPHICS = "/org/alixia/games/diplomacy/_resources/graphics/";
+
+	static final String BACKGROUND = "bg.png", HIT_TINT = "frame_dmg.png",
+			SPLASH_SCREEN = "splash-screens/splashscreen1.png";
+
+	/**
+	 * The sizes, in pixels, of the boards that images are loaded ahead of time
+	 * for. These are the two supported window sizes.
+	 */
+	static final int[] BOARD_PIXEL_SIZES = { 1028, 514 };
+
+	private static final String[] LAYERS = { BACKGROUND, HIT_TINT };
+
+	private static final Map<String, Image> IMAGES = new ConcurrentHashMap<>();
+	private static final Map<Integer, Atlas> ATLASES = new ConcurrentHashMap<>();
+
+	private static CompletableFuture<Void> loading;
+
+	/**
+	 * Every {@link BoardEntity.Type}'s image at one size, packed into a single
+	 * image, one type after another.
+	 */
+	static final class Atlas {
+		final Image image;
+		private final Rectangle2D[] regions = new Rectangle2D[BoardEntity.Type.values().length];
+
+		private Atlas(int cellSize) {
+			WritableImage image = new WritableImage(cellSize * regions.length, cellSize);
+			for (BoardEntity.Type type : BoardEntity.Type.values()) {
+				Image sprite = getImage(type.getPath(), cellSize, cellSize);
+				int x = type.ordinal() * cellSize;
+				image.getPixelWriter().setPixels(x, 0, cellSize, cellSize, sprite.getPixelReader(), 0, 0);
+				regions[type.ordinal()] = new Rectangle2D(x, 0, cellSize, cellSize);
+			}
+			this.image = image;
+		}
+
+		/**
+		 * @return The part of {@link #image} that holds the given type's image.
+		 */
+		Rectangle2D getRegion(BoardEntity.Type type) {
+			return regions[type.ordinal()];
+		}
+	}
+
+	/**
+	 * Starts loading every image that the game needs, at every size in
+	 * {@link #BOARD_PIXEL_SIZES}, on background threads. Calling this again
+	 * returns the same future.
+	 *
+	 * @return A future that completes once everything is loaded.
+	 */
+	static synchronized CompletableFuture<Void> loadAsync() {
+		if (loading != null)
+			return loading;
+
+		List<CompletableFuture<?>> tasks = new ArrayList<>();
+		for (int boardSize : BOARD_PIXEL_SIZES) {
+			for (String layer : LAYERS)
+				tasks.add(CompletableFuture.runAsync(() -> getImage(layer, boardSize, boardSize)));
+			int cellSize = SpriteCache.spriteSize(boardSize / (double) Board.DEFAULT_SIZE);
+			tasks.add(CompletableFuture.runAsync(() -> getAtlas(cellSize)));
+		}
+		return loading = CompletableFuture.allOf(tasks.toArray(new CompletableFuture<?>[tasks.size()]));
+	}
+
+	/**
+	 * @param path
+	 *            The image's path, relative to the graphics folder.
+	 * @return The image, at its full size.
+	 */
+	static Image getImage(String path) {
+		return IMAGES.computeIfAbsent(path, p -> load(p, 0, 0));
+	}
+
+	/**
+	 * @param path
+	 *            The image's path, relative to the graphics folder.
+	 * @return The image, already scaled to the given size if it was loaded at
+	 *         that size (see {@link #loadAsync()}), or at its full size
+	 *         otherwise.
+	 */
+	static Image getScaledImage(String path, double width, double height) {
+		Image image = IMAGES.get(key(path, (int) Math.round(width), (int) Math.round(height)));
+		return image == null ? getImage(path) : image;
+	}
+
+	private static Image getImage(String path, int width, int height) {
+		return IMAGES.computeIfAbsent(key(path, width, height), p -> load(path, width, height));
+	}
+
+	/**
+	 * Decodes an image, scaled to the given size unless it's <code>0</code> by
+	 * <code>0</code>.
+	 */
+	private static Image load(String path, int width, int height) {
+		Instrumentation.ImageLoadEvent event = new Instrumentation.ImageLoadEvent();
+		event.begin();
+		Image image = new Image(GRAPHICS + path, width, height, false, true);
+		if (event.shouldCommit()) {
+			event.path = path;
+			event.width = (int) image.getWidth();
+			event.height = (int) image.getHeight();
+			event.commit();
+		}
+		return image;
+	}
+
+	private static String key(String path, int width, int height) {
+		return path + '@' + width + 'x' + height;
+	}
+
+	/**
+	 * @return The atlas of entity images for cells of the given size, or
+	 *         <code>null</code> if none was loaded for that size.
+	 */
+	static Atlas findAtlas(int cellSize) {
+		return ATLASES.get(cellSize);
+	}
+
+	private static Atlas getAtlas(int cellSize) {
+		return ATLASES.computeIfAbsent(cellSize, Atlas::new);
+	}
+
+	private ResourceManager() {
+	}
+
+}
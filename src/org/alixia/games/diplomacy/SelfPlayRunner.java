@@ -0,0 +1,264 @@
+package org.alixia.games.diplomacy;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays complete games of Diplomacy on {@link BoardState}s, with no UI, split
+ * across every core through a {@link ForkJoinPool}. Each worker keeps one
+ * {@link BoardState} and one move buffer for all of the games it plays, so
+ * throughput is limited by the rules and the {@link MovePolicy}s rather than by
+ * allocation or contention.
+ * <p>
+ * A game ends as soon as only one team has anything left on the board, or once
+ * the turn limit is reached, at which point the team with the highest
+ * {@link BoardState#score(int) score} wins. Games where the best score is tied
+ * are counted as draws.
+ */
+public final class SelfPlayRunner {
+
+	/**
+	 * How many games a single fork-join task plays before it stops splitting.
+	 */
+	private static final int GAMES_PER_TASK = 64;
+
+	private final int boardSize, maxTurns;
+	private final MovePolicy[] policies;
+	private final long seed;
+
+	/**
+	 * @param boardSize
+	 *            The size of the boards to play on.
+	 * @param maxTurns
+	 *            How many turns (counting each team's turn separately) a game may
+	 *            last.
+	 * @param seed
+	 *            The seed that every game's random number generator is derived
+	 *            from. The same seed, board size, turn limit and policies always
+	 *            produce the same results, regardless of how many threads are used.
+	 * @param policies
+	 *            The policy for each team, indexed by {@link Board.Team} ordinal.
+	 */
+	public SelfPlayRunner(int boardSize, int maxTurns, long seed, MovePolicy... policies) {
+		if (policies.length != BoardState.TEAM_COUNT)
+			throw new IllegalArgumentException("Expected one policy per team.");
+		this.boardSize = boardSize;
+		this.maxTurns = maxTurns;
+		this.seed = seed;
+		this.policies = policies.clone();
+	}
+
+	/**
+	 * Plays <code>games</code> games on the given pool and waits for them all to
+	 * finish.
+	 */
+	public Results run(ForkJoinPool pool, int games) {
+		long start = System.nanoTime();
+		Results results = pool.invoke(new Batch(0, games));
+		results.nanos = System.nanoTime() - start;
+		return results;
+	}
+
+	public Results run(int games) {
+		return run(ForkJoinPool.commonPool(), games);
+	}
+
+	private final class Batch extends RecursiveTask<Results> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int first, end;
+
+		public Batch(int first, int end) {
+			this.first = first;
+			this.end = end;
+		}
+
+		@Override
+		protected Results compute() {
+			if (end - first > GAMES_PER_TASK) {
+				int middle = first + end >>> 1;
+				Batch left = new Batch(first, middle);
+				left.fork();
+				Results results = new Batch(middle, end).compute();
+				results.add(left.join());
+				return results;
+			}
+
+			Results results = new Results();
+			BoardState state = new BoardState(boardSize);
+			MoveGenerator generator = MoveGenerator.forSize(boardSize);
+			long[] moves = new long[generator.getMaxMoves()];
+			for (int game = first; game < end; game++)
+				play(state, generator, moves, new SplittableRandom(seed + game * 0x9E3779B97F4A7C15L), results);
+			return results;
+		}
+
+	}
+
+	private void play(BoardState state, MoveGenerator generator, long[] moves, SplittableRandom random,
+			Results results) {
+		state.setup();
+		state.nextTurn();
+
+		int turns = 0;
+		while (turns < maxTurns && state.teamsRemaining() > 1) {
+			int count = generator.generateMoves(state, moves);
+			results.moves++;
+			if (count == 0) {
+				state.pass();
+				turns++;
+				continue;
+			}
+			long move = policies[state.getCurrentTeam()].choose(state, moves, count, random);
+			state.apply(move);
+			if (Moves.endsTurn(move))
+				turns++;
+		}
+
+		int winner = BoardState.NO_TEAM, best = -1;
+		for (int team = 0; team < BoardState.TEAM_COUNT; team++) {
+			int score = state.score(team);
+			results.scores[team] += score;
+			if (score > best) {
+				best = score;
+				winner = team;
+			} else if (score == best)
+				winner = BoardState.NO_TEAM;
+		}
+
+		results.games++;
+		results.turns += turns;
+		if (winner == BoardState.NO_TEAM)
+			results.draws++;
+		else
+			results.wins[winner]++;
+	}
+
+	/**
+	 * Totals gathered over a set of games.
+	 */
+	public static final class Results {
+		private long games, draws, turns, moves, nanos;
+		private final long[] wins = new long[BoardState.TEAM_COUNT], scores = new long[BoardState.TEAM_COUNT];
+
+		private void add(Results other) {
+			games += other.games;
+			draws += other.draws;
+			turns += other.turns;
+			moves += other.moves;
+			for (int i = 0; i < BoardState.TEAM_COUNT; i++) {
+				wins[i] += other.wins[i];
+				scores[i] += other.scores[i];
+			}
+		}
+
+		public long getGames() {
+			return games;
+		}
+
+		public long getDraws() {
+			return draws;
+		}
+
+		public long getWins(int team) {
+			return wins[team];
+		}
+
+		public double getAverageScore(int team) {
+			return games == 0 ? 0 : (double) scores[team] / games;
+		}
+
+		public double getAverageTurns() {
+			return games == 0 ? 0 : (double) turns / games;
+		}
+
+		public long getMoves() {
+			return moves;
+		}
+
+		public double getGamesPerSecond() {
+			return nanos == 0 ? 0 : games * 1e9 / nanos;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			builder.append(String.format(Locale.ROOT, "%d games in %.3fs (%.1f games/s, %.0f moves/s)%n", games,
+					nanos / 1e9, getGamesPerSecond(), nanos == 0 ? 0 : moves * 1e9 / nanos));
+			builder.append(String.format(Locale.ROOT, "Average length: %.1f turns%n", getAverageTurns()));
+			for (int team = 0; team < BoardState.TEAM_COUNT; team++)
+				builder.append(String.format(Locale.ROOT, "%-6s wins: %6d (%5.1f%%), average score %.2f%n",
+						BoardState.teamName(team), wins[team], games == 0 ? 0 : 100.0 * wins[team] / games,
+						getAverageScore(team)));
+			builder.append(String.format(Locale.ROOT, "Draws:      %6d (%5.1f%%)", draws,
+					games == 0 ? 0 : 100.0 * draws / games));
+			return builder.toString();
+		}
+	}
+
+	/**
+	 * Runs a batch of self-play games from the command line. Accepted options are
+	 * <code>--games</code>, <code>--size</code>, <code>--turns</code>,
+	 * <code>--threads</code>, <code>--seed</code>, and <code>--policy</code>
+	 * (<code>random</code> or <code>greedy</code>, either for all teams or as a
+	 * comma separated list in red, white, blue order).
+	 */
+	public static void main(String[] args) {
+		int games = 10000, size = 8, turns = 300, threads = Runtime.getRuntime().availableProcessors();
+		long seed = 0;
+		MovePolicy[] policies = new MovePolicy[BoardState.TEAM_COUNT];
+		Arrays.fill(policies, MovePolicy.RANDOM);
+
+		for (int i = 0; i + 1 < args.length; i += 2)
+			switch (args[i]) {
+			case "--games":
+				games = Integer.parseInt(args[i + 1]);
+				break;
+			case "--size":
+				size = Integer.parseInt(args[i + 1]);
+				break;
+			case "--turns":
+				turns = Integer.parseInt(args[i + 1]);
+				break;
+			case "--threads":
+				threads = Integer.parseInt(args[i + 1]);
+				break;
+			case "--seed":
+				seed = Long.parseLong(args[i + 1]);
+				break;
+			case "--policy":
+				String[] names = args[i + 1].split(",");
+				for (int team = 0; team < policies.length; team++)
+					policies[team] = parsePolicy(names[names.length == 1 ? 0 : team]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+
+		SelfPlayRunner runner = new SelfPlayRunner(size, turns, seed, policies);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			// Warm up so that the reported throughput isn't mostly the JIT.
+			runner.run(pool, Math.max(1, games / 10));
+			System.out.println(runner.run(pool, games));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static MovePolicy parsePolicy(String name) {
+		switch (name.trim().toLowerCase(Locale.ROOT)) {
+		case "random":
+			return MovePolicy.RANDOM;
+		case "greedy":
+			return MovePolicy.GREEDY;
+		default:
+			throw new IllegalArgumentException("Unknown policy: " + name);
+		}
+	}
+
+}
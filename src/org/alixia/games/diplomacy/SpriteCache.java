@@ -0,0 +1,160 @@
+package org.alixia.games.diplomacy;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javafx.geometry.Rectangle2D;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.effect.DropShadow;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.paint.Color;
+
+/**
+ * Pre-renders the glowing versions of each {@link BoardEntity.Type}'s image.
+ * <p>
+ * A {@link DropShadow} as wide as the glows applied live to a node costs a
+ * Gaussian blur every time the node is drawn. Instead, each combination of
+ * type, glow and cell size is drawn with its effect once, into an image, and
+ * highlighting an entity is just a matter of showing that image. Cell sizes are
+ * rounded up to the next of a few fixed {@link #spriteSize(double) steps}, and
+ * sprites are scaled down to the cell they're drawn in, so zooming smoothly
+ * only renders new sprites each time it crosses a step. Glows spill
+ * over the edges of the cell, so sprites are larger than the cell they're for;
+ * the amount they spill over is kept with them. The same goes for the
+ * translucent previews of pieces waiting to be placed.
+ * <p>
+ * This must only be used from the FX thread.
+ */
+final class SpriteCache {
+
+	/**
+	 * An image for an entity, and how far the image extends past each side of the
+	 * entity's cell.
+	 */
+	static final class Sprite {
+		final Image image;
+		/**
+		 * The part of {@link #image} to draw, or <code>null</code> for all of it.
+		 */
+		final Rectangle2D viewport;
+		/**
+		 * How far the image extends past the left and right (or top and bottom) edges
+		 * of the cell, as a fraction of the cell's width (or height).
+		 */
+		final double paddingX, paddingY;
+
+		private Sprite(Image image, Rectangle2D viewport, double paddingX, double paddingY) {
+			this.image = image;
+			this.viewport = viewport;
+			this.paddingX = paddingX;
+			this.paddingY = paddingY;
+		}
+	}
+
+	/**
+	 * How many rendered sprites to keep. Sprites for sizes that the board is no
+	 * longer drawn at (after a resize) are dropped first.
+	 */
+	private static final int MAX_SPRITES = 256;
+
+	/**
+	 * How opaque previews are. This is baked into their sprites, so showing a
+	 * preview doesn't need a translucent node.
+	 */
+	private static final double PREVIEW_OPACITY = 0.35;
+
+	private static final Map<Long, Sprite> SPRITES = new LinkedHashMap<Long, Sprite>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Entry<Long, Sprite> eldest) {
+			return size() > MAX_SPRITES;
+		}
+	};
+
+	private static final SnapshotParameters SNAPSHOT_PARAMETERS = new SnapshotParameters();
+
+	static {
+		SNAPSHOT_PARAMETERS.setFill(Color.TRANSPARENT);
+	}
+
+	/**
+	 * @return The sprite to draw the given entity with, in a cell of the given
+	 *         size.
+	 */
+	static Sprite get(BoardEntity entity, double cellWidth, double cellHeight) {
+		return get(entity, cellWidth, cellHeight, false);
+	}
+
+	/**
+	 * @return The translucent sprite to preview the given entity with, in a cell
+	 *         of the given size, before it's placed.
+	 */
+	static Sprite getPreview(BoardEntity entity, double cellWidth, double cellHeight) {
+		return get(entity, cellWidth, cellHeight, true);
+	}
+
+	private static Sprite get(BoardEntity entity, double cellWidth, double cellHeight, boolean preview) {
+		int width = spriteSize(cellWidth), height = spriteSize(cellHeight);
+		int glow = entity.getGlow();
+		long key = (long) width << 40 | (long) height << 16 | (preview ? 1 << 12 : 0) | glow << 8
+				| entity.getType().ordinal();
+		if (entity.spriteKey != key) {
+			entity.sprite = get(entity.getType(), glow, preview, width, height, key);
+			entity.spriteKey = key;
+		}
+		return entity.sprite;
+	}
+
+	/**
+	 * @return The size, in whole pixels, to render sprites at for cells of the
+	 *         given size: the next power of &radic;2 up, rounded up. Sprites are
+	 *         never scaled up, and are scaled down by less than &radic;2.
+	 */
+	static int spriteSize(double cellPixels) {
+		if (!(cellPixels > 1))
+			return 1;
+		// The small amounts keep exact powers from being rounded up a step.
+		double step = Math.ceil(2 * Math.log(cellPixels) / Math.log(2) - 1e-9);
+		return (int) Math.ceil(Math.pow(2, step / 2) - 1e-9);
+	}
+
+	private static Sprite get(BoardEntity.Type type, int glow, boolean preview, int width, int height, long key) {
+		Sprite sprite = SPRITES.get(key);
+		if (sprite == null) {
+			DropShadow effect = BoardEntity.getGlowEffect(glow, Math.min(width, height));
+			SPRITES.put(key, sprite = render(type, effect, preview, width, height));
+		}
+		return sprite;
+	}
+
+	private static Sprite render(BoardEntity.Type type, DropShadow glow, boolean preview, int width, int height) {
+		// Use the image already scaled to this size, if it was loaded.
+		ResourceManager.Atlas atlas = width == height ? ResourceManager.findAtlas(width) : null;
+		Image image = atlas == null ? type.getImage() : atlas.image;
+		Rectangle2D viewport = atlas == null ? null : atlas.getRegion(type);
+		if (glow == null && !preview)
+			return new Sprite(image, viewport, 0, 0);
+		if (glow != null && Instrumentation.isCounting())
+			Instrumentation.glowRendered();
+
+		ImageView view = new ImageView(image);
+		view.setViewport(viewport);
+		view.setFitWidth(width);
+		view.setFitHeight(height);
+		view.setEffect(glow);
+		if (preview)
+			view.setOpacity(PREVIEW_OPACITY);
+		// The snapshot covers the view's bounds including its effect, which are
+		// centered on the image itself.
+		Image sprite = view.snapshot(SNAPSHOT_PARAMETERS, null);
+		return new Sprite(sprite, null, (sprite.getWidth() - width) / 2 / width,
+				(sprite.getHeight() - height) / 2 / height);
+	}
+
+	private SpriteCache() {
+	}
+
+}
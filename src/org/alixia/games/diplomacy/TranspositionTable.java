@@ -0,0 +1,152 @@
+package org.alixia.games.diplomacy;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size hash table of search results, keyed by {@link BoardState#hash()},
+ * that any number of threads can read and write without locking.
+ * <p>
+ * Each entry takes three <code>long</code>s: the packed result, the best move,
+ * and the key XORed with both of the others. A reader recomputes the key from
+ * the three words it read, so an entry that was torn by two threads writing it
+ * at once simply fails to match and is treated as a miss. Entries are grouped
+ * into buckets of two. A new result replaces an entry for the same position, or
+ * otherwise whichever entry in its bucket is from the oldest search, preferring
+ * to evict shallower results among entries of the same age.
+ * <p>
+ * All memory is allocated up front, so the table never grows, however long it
+ * is used.
+ */
+public final class TranspositionTable {
+
+	/**
+	 * The kind of bound that a stored score is.
+	 */
+	public static final int EXACT = 0, LOWER_BOUND = 1, UPPER_BOUND = 2;
+
+	private static final int ENTRY_LONGS = 3, BUCKET_SIZE = 2;
+
+	private final long[] table;
+	private final int bucketMask;
+	private volatile int age;
+
+	/**
+	 * @param megabytes
+	 *            The most memory the table may use. The actual size is the largest
+	 *            power of two number of buckets that fits.
+	 */
+	public TranspositionTable(int megabytes) {
+		long bytes = (long) megabytes << 20, bucketBytes = 8L * ENTRY_LONGS * BUCKET_SIZE;
+		if (bytes < bucketBytes)
+			throw new IllegalArgumentException("Transposition table too small.");
+		long buckets = Long
+				.highestOneBit(Math.min(bytes / bucketBytes, Integer.MAX_VALUE / (ENTRY_LONGS * BUCKET_SIZE)));
+		table = new long[(int) buckets * ENTRY_LONGS * BUCKET_SIZE];
+		bucketMask = (int) buckets - 1;
+	}
+
+	public int getCapacity() {
+		return table.length / ENTRY_LONGS;
+	}
+
+	/**
+	 * Marks the start of a new search. Entries from earlier searches are replaced
+	 * before entries from this one.
+	 */
+	public void newSearch() {
+		age = age + 1 & 0xFF;
+	}
+
+	public void clear() {
+		Arrays.fill(table, 0);
+	}
+
+	private static long pack(int score, int depth, int bound, int age) {
+		return (long) score << 32 | (depth & 0xFFL) << 16 | (bound & 3L) << 8 | age & 0xFFL;
+	}
+
+	public static int score(long data) {
+		return (int) (data >> 32);
+	}
+
+	public static int depth(long data) {
+		return (int) (data >>> 16 & 0xFF);
+	}
+
+	public static int bound(long data) {
+		return (int) (data >>> 8 & 3);
+	}
+
+	private static int age(long data) {
+		return (int) (data & 0xFF);
+	}
+
+	private int bucket(long hash) {
+		return ((int) (hash >>> 32 ^ hash) & bucketMask) * ENTRY_LONGS * BUCKET_SIZE;
+	}
+
+	/**
+	 * Looks up a position.
+	 *
+	 * @param hash
+	 *            The position's hash.
+	 * @param result
+	 *            Where to write the result if it's found: the packed score, depth
+	 *            and bound at index <code>0</code>, to be read with
+	 *            {@link #score(long)}, {@link #depth(long)} and
+	 *            {@link #bound(long)}, and the best move at index
+	 *            <code>1</code>.
+	 * @return Whether the position was found.
+	 */
+	public boolean probe(long hash, long[] result) {
+		for (int i = bucket(hash), end = i + ENTRY_LONGS * BUCKET_SIZE; i < end; i += ENTRY_LONGS) {
+			long data = table[i + 1], move = table[i + 2];
+			if ((table[i] ^ data ^ move) == hash) {
+				result[0] = data;
+				result[1] = move;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Stores the result of searching a position.
+	 *
+	 * @param hash
+	 *            The position's hash.
+	 * @param score
+	 *            The score found.
+	 * @param depth
+	 *            How deep the position was searched. Only the lowest eight bits
+	 *            are kept.
+	 * @param bound
+	 *            One of {@link #EXACT}, {@link #LOWER_BOUND} and
+	 *            {@link #UPPER_BOUND}.
+	 * @param move
+	 *            The best move found.
+	 */
+	public void store(long hash, int score, int depth, int bound, long move) {
+		int age = this.age, start = bucket(hash), victim = start, victimWorth = Integer.MAX_VALUE;
+		for (int i = start, end = start + ENTRY_LONGS * BUCKET_SIZE; i < end; i += ENTRY_LONGS) {
+			long data = table[i + 1], storedMove = table[i + 2];
+			if ((table[i] ^ data ^ storedMove) == hash) {
+				// Keep a deeper result for the same position from this search.
+				if (age(data) == age && depth(data) > depth && bound != EXACT)
+					return;
+				victim = i;
+				break;
+			}
+			int worth = (age(data) == age ? 256 : 0) + depth(data);
+			if (worth < victimWorth) {
+				victimWorth = worth;
+				victim = i;
+			}
+		}
+		long data = pack(score, depth, bound, age);
+		table[victim] = hash ^ data ^ move;
+		table[victim + 1] = data;
+		table[victim + 2] = move;
+	}
+
+}
@@ -0,0 +1,100 @@
+package org.alixia.games.diplomacy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+final class BoardHistoryTest {
+
+	@ParameterizedTest
+	@ValueSource(ints = { 4, 8, 50, 100 })
+	void undoesAndRedoesEveryMove(int size) {
+		Games games = new Games(size, size);
+		BoardState state = Games.start(size);
+		BoardHistory history = new BoardHistory(state);
+		List<PackedBoard> turns = new ArrayList<>();
+		turns.add(PackedBoard.of(state));
+		for (int i = 0; i < 200; i++) {
+			long move = games.randomMove(state);
+			state.apply(move);
+			history.push(state, move);
+			turns.add(PackedBoard.of(state));
+		}
+
+		for (int turn = turns.size() - 2; turn >= 0; turn--) {
+			assertTrue(history.canUndo());
+			history.undo(state);
+			assertEquals(turns.get(turn), PackedBoard.of(state), "Undone to turn " + turn);
+		}
+		assertFalse(history.canUndo());
+		for (int turn = 1; turn < turns.size(); turn++) {
+			assertTrue(history.canRedo());
+			history.redo(state);
+			assertEquals(turns.get(turn), PackedBoard.of(state), "Redone to turn " + turn);
+		}
+		assertFalse(history.canRedo());
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 8, 50 })
+	void returnsToAnEarlierBranch(int size) {
+		Games games = new Games(size, 1);
+		BoardState state = Games.start(size);
+		BoardHistory history = new BoardHistory(state);
+		for (int i = 0; i < 20; i++) {
+			long move = games.randomMove(state);
+			state.apply(move);
+			history.push(state, move);
+		}
+		BoardHistory.Version branch = history.getVersion();
+		PackedBoard atBranch = PackedBoard.of(state);
+
+		// Go back and play something else, which drops the first branch's redo.
+		for (int i = 0; i < 5; i++)
+			history.undo(state);
+		for (int i = 0; i < 10; i++) {
+			long move = games.randomMove(state);
+			state.apply(move);
+			history.push(state, move);
+		}
+		PackedBoard atOther = PackedBoard.of(state);
+
+		history.checkout(branch, state);
+		assertEquals(atBranch, PackedBoard.of(state));
+		// Checking out is undoable like any other change.
+		history.undo(state);
+		assertEquals(atOther, PackedBoard.of(state));
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 8, 100 })
+	void reportsOnlyTheCellsThatChanged(int size) {
+		Games games = new Games(size, 2);
+		BoardState state = Games.start(size);
+		BoardHistory history = new BoardHistory(state);
+		for (int i = 0; i < 30; i++) {
+			BoardState before = state.copy();
+			long move = games.randomMove(state);
+			state.apply(move);
+			history.push(state, move);
+
+			BoardState undone = state.copy();
+			int[] cells = history.undo(undone);
+			int changed = 0;
+			for (int cell = 0; cell < state.getCellCount(); cell++)
+				if (before.get(cell) != state.get(cell))
+					changed++;
+			assertEquals(changed, cells.length);
+			for (int cell : cells)
+				assertTrue(before.get(cell) != state.get(cell));
+			history.redo(undone);
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+package org.alixia.games.diplomacy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+final class BoardStateTest {
+
+	private static final int GAMES = 80, MAX_TURNS = 300;
+
+	/**
+	 * @return A state built from nothing with the same contents as the given one,
+	 *         so that its hash is only what the cells put into it add up to.
+	 */
+	private static BoardState rebuild(BoardState state) {
+		BoardState rebuilt = new BoardState(state.getSize());
+		for (int cell = 0; cell < state.getCellCount(); cell++)
+			if (state.get(cell) != BoardState.EMPTY)
+				rebuilt.put(state.get(cell), cell);
+		rebuilt.setCurrentTeam(state.getCurrentTeam());
+		rebuilt.queue(state.getQueued());
+		rebuilt.setPlacing(state.isPlacing());
+		return rebuilt;
+	}
+
+	private static void assertSameState(BoardState expected, BoardState actual) {
+		for (int cell = 0; cell < expected.getCellCount(); cell++)
+			assertEquals(expected.get(cell), actual.get(cell), "Cell " + cell);
+		for (int type = 0; type < BoardState.TYPE_CODE_COUNT; type++) {
+			assertEquals(expected.count(type), actual.count(type));
+			assertArrayEquals(expected.typeBoard(type), actual.typeBoard(type));
+		}
+		for (int team = 0; team < BoardState.TEAM_COUNT; team++)
+			assertArrayEquals(expected.teamBoard(team), actual.teamBoard(team));
+		assertEquals(expected.getCurrentTeam(), actual.getCurrentTeam());
+		assertEquals(expected.getQueued(), actual.getQueued());
+		assertEquals(expected.isPlacing(), actual.isPlacing());
+		assertEquals(expected.hash(), actual.hash());
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 8, 13, 31 })
+	void keepsTheHashOfWhatIsOnTheBoard(int size) {
+		for (int game = 0; game < GAMES; game++) {
+			Games games = new Games(size, game);
+			BoardState state = Games.start(size);
+			for (int turn = 0; turn < MAX_TURNS && state.teamsRemaining() > 1; turn++) {
+				state.apply(games.randomMove(state));
+				assertSameState(rebuild(state), state);
+			}
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 8, 13, 31 })
+	void undoesEveryMove(int size) {
+		for (int game = 0; game < GAMES; game++) {
+			Games games = new Games(size, game);
+			BoardState state = Games.start(size);
+			Deque<BoardState> before = new ArrayDeque<>();
+			Deque<long[]> made = new ArrayDeque<>();
+			for (int turn = 0; turn < MAX_TURNS && state.teamsRemaining() > 1; turn++) {
+				long move = games.randomMove(state);
+				before.push(state.copy());
+				made.push(new long[] { move, state.apply(move) });
+			}
+			while (!made.isEmpty()) {
+				long[] move = made.pop();
+				state.undo(move[0], move[1]);
+				assertSameState(before.pop(), state);
+			}
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(ints = { 8, 13 })
+	void undoesEveryMoveAvailable(int size) {
+		MoveGenerator generator = MoveGenerator.forSize(size);
+		long[] moves = new long[generator.getMaxMoves()];
+		Games games = new Games(size, 1);
+		BoardState state = Games.start(size);
+		for (int turn = 0; turn < MAX_TURNS && state.teamsRemaining() > 1; turn++) {
+			BoardState before = state.copy();
+			for (int i = 0, count = generator.generateMoves(state, moves); i < count; i++) {
+				long token = state.apply(moves[i]);
+				state.undo(moves[i], token);
+				assertSameState(before, state);
+			}
+			state.apply(games.randomMove(state));
+		}
+	}
+
+}
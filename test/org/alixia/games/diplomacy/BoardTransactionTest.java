@@ -0,0 +1,115 @@
+package org.alixia.games.diplomacy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import org.alixia.games.diplomacy.BoardEntity.Type;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javafx.application.Platform;
+
+final class BoardTransactionTest {
+
+	@BeforeAll
+	static void startFX() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		try {
+			Platform.startup(started::countDown);
+		} catch (IllegalStateException e) {
+			// Already started by another test.
+			started.countDown();
+		}
+		started.await();
+	}
+
+	private static void onFX(Runnable test) throws Throwable {
+		CompletableFuture<Void> done = new CompletableFuture<>();
+		Platform.runLater(() -> {
+			try {
+				test.run();
+				done.complete(null);
+			} catch (Throwable e) {
+				done.completeExceptionally(e);
+			}
+		});
+		try {
+			done.get();
+		} catch (ExecutionException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Plays random moves until a team has a piece to place.
+	 */
+	private static void playUntilPlacing(Board board) {
+		Games games = new Games(board.getBoardSize(), 5);
+		for (int i = 0; i < 1000 && !board.getState().isPieceQueued(); i++)
+			board.makeMove(games.randomMove(board.getState()));
+		assertTrue(board.getState().isPieceQueued(), "No piece was ever queued.");
+	}
+
+	private static int emptyCell(BoardState state) {
+		for (int cell = 0;; cell++)
+			if (state.get(cell) == BoardState.EMPTY)
+				return cell;
+	}
+
+	@Test
+	void changesEveryCellAsOneStep() throws Throwable {
+		onFX(() -> {
+			Board board = new Board(8, Board.RenderMode.NODES);
+			BoardState state = board.getState();
+			PackedBoard before = board.pack();
+			int first = emptyCell(state);
+			board.beginTransaction().put(Type.RED_PIECE, state.row(first), state.col(first))
+					.put(Type.BLUE_TOWER, 7, 7).remove(7, 7).put(Type.WHITE_TOWER, 7, 7).commit();
+
+			assertEquals(BoardState.RED_PIECE, state.get(first));
+			assertEquals(BoardState.WHITE_TOWER, state.get(state.cell(7, 7)));
+			for (int cell = 0; cell < state.getCellCount(); cell++)
+				assertEquals(state.get(cell), board.hasEntity(state.row(cell), state.col(cell))
+						? board.getEntity(state.row(cell), state.col(cell)).getType().code()
+						: BoardState.EMPTY);
+			PackedBoard after = board.pack();
+			board.undo();
+			assertEquals(before, board.pack());
+			board.redo();
+			assertEquals(after, board.pack());
+		});
+	}
+
+	@Test
+	void keepsTheQueuedPieceWhenCommittedMidTurn() throws Throwable {
+		onFX(() -> {
+			Board board = new Board(8, Board.RenderMode.NODES);
+			playUntilPlacing(board);
+			BoardState state = board.getState();
+			int queued = state.getQueued(), team = state.getCurrentTeam();
+			PackedBoard before = board.pack();
+
+			int cell = emptyCell(state);
+			board.beginTransaction().put(Type.UNCLAIMED_TOWER, state.row(cell), state.col(cell)).commit();
+
+			assertEquals(queued, state.getQueued());
+			assertEquals(team, state.getCurrentTeam());
+			assertTrue(board.isPieceQueued());
+			assertEquals(queued, board.getQueuedPiece().getType().code());
+
+			// The version the transaction made has the piece queued too.
+			PackedBoard after = board.pack();
+			assertEquals(queued, after.getQueued());
+			board.undo();
+			assertEquals(before, board.pack());
+			board.redo();
+			assertEquals(after, board.pack());
+			assertEquals(queued, board.getQueuedPiece().getType().code());
+		});
+	}
+
+}
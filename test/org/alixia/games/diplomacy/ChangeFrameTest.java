@@ -0,0 +1,78 @@
+package org.alixia.games.diplomacy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import org.junit.jupiter.api.Test;
+
+final class ChangeFrameTest {
+
+	private static ChangeFrame frame(long sequence) {
+		return new ChangeFrame(sequence, new int[] { 3, 17, 63 },
+				new byte[] { BoardState.EMPTY << 4 | BoardState.RED_PIECE,
+						BoardState.BLUE_TOWER << 4 | BoardState.RED_TOWER, BoardState.WHITE_PIECE << 4 | BoardState.EMPTY },
+				BoardState.BLUE, BoardState.RED_PIECE, true);
+	}
+
+	@Test
+	void decodesWhatWasEncoded() {
+		ChangeFrame frame = frame(42);
+		ChangeFrame decoded = ChangeFrame.decode(frame.encode());
+		assertEquals(42, decoded.getSequence());
+		assertEquals(frame.getChangeCount(), decoded.getChangeCount());
+		for (int i = 0; i < frame.getChangeCount(); i++) {
+			assertEquals(frame.getCell(i), decoded.getCell(i));
+			assertEquals(frame.getOldType(i), decoded.getOldType(i));
+			assertEquals(frame.getNewType(i), decoded.getNewType(i));
+		}
+		assertEquals(BoardState.BLUE, decoded.getCurrentTeam());
+		assertEquals(BoardState.RED_PIECE, decoded.getQueued());
+		assertEquals(true, decoded.isPlacing());
+	}
+
+	@Test
+	void encodingIsSharedButEachViewIsIndependent() {
+		ChangeFrame frame = frame(1);
+		ByteBuffer first = frame.encode();
+		ChangeFrame.decode(first);
+		assertEquals(0, first.remaining());
+		// Reading one view doesn't move another.
+		ByteBuffer second = frame.encode();
+		assertEquals(first.limit(), second.remaining());
+		assertThrows(ReadOnlyBufferException.class, () -> second.put(0, (byte) 0));
+	}
+
+	@Test
+	void appliesFramesInOrderAndSkipsStaleOnes() {
+		BoardState state = new BoardState(8);
+		state.put(BoardState.BLUE_TOWER, 17);
+		state.put(BoardState.WHITE_PIECE, 63);
+		long sequence = ChangeFrame.apply(frame(5).encode(), state, 4);
+		assertEquals(5, sequence);
+		assertEquals(BoardState.RED_PIECE, state.get(3));
+		assertEquals(BoardState.RED_TOWER, state.get(17));
+		assertEquals(BoardState.EMPTY, state.get(63));
+		assertEquals(BoardState.BLUE, state.getCurrentTeam());
+		assertEquals(BoardState.RED_PIECE, state.getQueued());
+
+		// A frame that the game already includes changes nothing.
+		state.put(BoardState.EMPTY, 3);
+		assertEquals(5, ChangeFrame.apply(frame(5).encode(), state, 5));
+		assertEquals(BoardState.EMPTY, state.get(3));
+	}
+
+	@Test
+	void snapshotsReplaceTheWholeGame() {
+		BoardState game = Games.start(8);
+		game.apply(new Games(8, 1).randomMove(game));
+		BoardState copy = new BoardState(8);
+		copy.put(BoardState.RED_PIECE, 0);
+		long sequence = ChangeFrame.apply(ChangeFrame.encodeSnapshot(9, PackedBoard.of(game)), copy, 3);
+		assertEquals(9, sequence);
+		assertEquals(PackedBoard.of(game), PackedBoard.of(copy));
+	}
+
+}
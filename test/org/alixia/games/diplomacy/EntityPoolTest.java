@@ -0,0 +1,27 @@
+package org.alixia.games.diplomacy;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.alixia.games.diplomacy.BoardEntity.Type;
+import org.junit.jupiter.api.Test;
+
+final class EntityPoolTest {
+
+	@Test
+	void reusesEntitiesItMade() {
+		EntityPool pool = new EntityPool();
+		BoardEntity entity = pool.obtain(Type.RED_PIECE);
+		pool.recycle(entity);
+		assertSame(entity, pool.obtain(Type.RED_PIECE));
+	}
+
+	@Test
+	void neverKeepsEntitiesItDidntMake() {
+		EntityPool pool = new EntityPool();
+		BoardEntity entity = new BoardEntity(Type.RED_PIECE);
+		pool.recycle(entity);
+		assertNotSame(entity, pool.obtain(Type.RED_PIECE));
+	}
+
+}
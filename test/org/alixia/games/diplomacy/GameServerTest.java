@@ -0,0 +1,138 @@
+package org.alixia.games.diplomacy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+final class GameServerTest {
+
+	private static final int SIZE = 8, ALL_TEAMS = (1 << BoardState.TEAM_COUNT) - 1;
+
+	private GameServer server;
+	private Thread serving;
+	private GameClient client;
+
+	private final BlockingQueue<PackedBoard> states = new LinkedBlockingQueue<>();
+	private final BlockingQueue<long[]> moves = new LinkedBlockingQueue<>();
+	private final BlockingQueue<Integer> rejections = new LinkedBlockingQueue<>();
+
+	@BeforeEach
+	void serve() throws IOException {
+		server = new GameServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		serving = new Thread(server, "Game server");
+		serving.start();
+		client = new GameClient(server.getAddress());
+		client.start(new GameClient.Listener() {
+			@Override
+			public void joined(int session, PackedBoard board) {
+				states.add(board);
+			}
+
+			@Override
+			public void moved(long[] made) {
+				moves.add(made);
+			}
+
+			@Override
+			public void rejected(int index) {
+				rejections.add(index);
+			}
+		});
+	}
+
+	@AfterEach
+	void stop() throws IOException, InterruptedException {
+		client.close();
+		server.close();
+		serving.join();
+	}
+
+	private static <T> T next(BlockingQueue<T> queue) throws InterruptedException {
+		T next = queue.poll(10, TimeUnit.SECONDS);
+		assertNotNull(next, "Nothing arrived from the server.");
+		return next;
+	}
+
+	@Test
+	void sendsTheGameOnJoining() throws IOException, InterruptedException {
+		client.join(1, SIZE, ALL_TEAMS);
+		assertEquals(PackedBoard.of(Games.start(SIZE)), next(states));
+	}
+
+	@Test
+	void sendsLegalMovesBack() throws IOException, InterruptedException {
+		client.join(1, SIZE, ALL_TEAMS);
+		BoardState state = new BoardState(SIZE);
+		next(states).unpack(state);
+		Games games = new Games(SIZE, 4);
+		long first = games.randomMove(state);
+		state.apply(first);
+		long second = games.randomMove(state);
+		client.send(first, second);
+		assertArrayEquals(new long[] { first, second }, next(moves));
+		assertNull(rejections.poll());
+	}
+
+	@Test
+	void rejectsIllegalMovesAtTheirIndex() throws IOException, InterruptedException {
+		client.join(1, SIZE, ALL_TEAMS);
+		BoardState state = new BoardState(SIZE);
+		next(states).unpack(state);
+		long legal = new Games(SIZE, 4).randomMove(state);
+		// Nothing can move onto its own tower.
+		long illegal = Moves.of(Moves.MOVE, state.cell(SIZE - 2, SIZE - 1), state.cell(SIZE - 1, SIZE - 1));
+		client.send(legal, illegal, legal);
+		assertEquals(1, (int) next(rejections));
+		assertArrayEquals(new long[] { legal }, next(moves));
+	}
+
+	@Test
+	void disconnectsReadersThatFallTooFarBehind() {
+		assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+			try (SocketChannel reader = SocketChannel.open()) {
+				reader.setOption(StandardSocketOptions.SO_RCVBUF, 1 << 12);
+				reader.connect(server.getAddress());
+				reader.write(Protocol.join(1, SIZE, 0));
+				// Every join after the first is answered with an error, which this never
+				// reads, until the server gives up on it and the writes start failing.
+				ByteBuffer joins = ByteBuffer.allocate(1 << 16);
+				while (joins.remaining() >= Protocol.HEADER_BYTES + 9)
+					joins.put(Protocol.join(1, SIZE, 0));
+				joins.flip();
+				assertThrows(IOException.class, () -> {
+					for (long sent = 0; sent < 1L << 26; sent += joins.limit()) {
+						joins.rewind();
+						while (joins.hasRemaining())
+							reader.write(joins);
+					}
+				});
+			}
+		});
+	}
+
+	@Test
+	void keepsServingOthersAfterDisconnectingOne() throws IOException, InterruptedException {
+		disconnectsReadersThatFallTooFarBehind();
+		client.join(1, SIZE, ALL_TEAMS);
+		assertEquals(PackedBoard.of(Games.start(SIZE)), next(states));
+	}
+
+}
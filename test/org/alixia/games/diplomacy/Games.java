@@ -0,0 +1,39 @@
+package org.alixia.games.diplomacy;
+
+import java.util.SplittableRandom;
+
+/**
+ * Plays games with random moves, for tests.
+ */
+final class Games {
+
+	private final MoveGenerator generator;
+	private final long[] buffer;
+	private final SplittableRandom random;
+
+	Games(int size, long seed) {
+		generator = MoveGenerator.forSize(size);
+		buffer = new long[generator.getMaxMoves()];
+		random = new SplittableRandom(seed);
+	}
+
+	/**
+	 * @return A new game, set up and on its first team's turn.
+	 */
+	static BoardState start(int size) {
+		BoardState state = new BoardState(size);
+		state.setup();
+		state.nextTurn();
+		return state;
+	}
+
+	/**
+	 * @return A random move that the current team may make, or
+	 *         {@link Moves#PASS} if it has none.
+	 */
+	long randomMove(BoardState state) {
+		int moves = generator.generateMoves(state, buffer);
+		return moves == 0 ? Moves.PASS : buffer[random.nextInt(moves)];
+	}
+
+}
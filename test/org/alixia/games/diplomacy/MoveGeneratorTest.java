@@ -0,0 +1,74 @@
+package org.alixia.games.diplomacy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+final class MoveGeneratorTest {
+
+	private static final int GAMES = 80, MAX_TURNS = 300;
+
+	@ParameterizedTest
+	@ValueSource(ints = { 8, 13, 31 })
+	void generatesOnlyLegalMoves(int size) {
+		MoveGenerator generator = MoveGenerator.forSize(size);
+		long[] moves = new long[generator.getMaxMoves()];
+		for (int game = 0; game < GAMES; game++) {
+			Games games = new Games(size, game);
+			BoardState state = Games.start(size);
+			for (int turn = 0; turn < MAX_TURNS && state.teamsRemaining() > 1; turn++) {
+				int count = generator.generateMoves(state, moves);
+				for (int i = 0; i < count; i++) {
+					long move = moves[i];
+					assertTrue(generator.isLegal(state, move), () -> Moves.toString(move, size));
+				}
+				Arrays.sort(moves, 0, count);
+				for (int i = 1; i < count; i++)
+					assertNotEquals(moves[i - 1], moves[i], "A move was generated twice.");
+				state.apply(games.randomMove(state));
+			}
+		}
+	}
+
+	/**
+	 * Checks every move that could be encoded on a small board against what's
+	 * generated, so that nothing legal is left out either.
+	 */
+	@Test
+	void generatesEveryLegalMove() {
+		int size = 8;
+		MoveGenerator generator = MoveGenerator.forSize(size);
+		long[] moves = new long[generator.getMaxMoves()];
+		Games games = new Games(size, 3);
+		BoardState state = Games.start(size);
+		for (int turn = 0; turn < MAX_TURNS && state.teamsRemaining() > 1; turn++) {
+			Set<Long> generated = new HashSet<>();
+			for (int i = 0, count = generator.generateMoves(state, moves); i < count; i++)
+				generated.add(moves[i]);
+			for (int kind = Moves.MOVE; kind <= Moves.PLACE; kind++)
+				for (int from = 0; from < state.getCellCount(); from++)
+					for (int to = 0; to < state.getCellCount(); to++) {
+						long move = Moves.of(kind, from, to);
+						assertEquals(generated.contains(move), generator.isLegal(state, move),
+								Moves.toString(move, size));
+					}
+			state.apply(games.randomMove(state));
+		}
+	}
+
+	@Test
+	void neverAllowsPassing() {
+		BoardState state = Games.start(8);
+		assertFalse(MoveGenerator.forSize(8).isLegal(state, Moves.PASS));
+	}
+
+}
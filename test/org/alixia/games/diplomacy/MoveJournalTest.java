@@ -0,0 +1,123 @@
+package org.alixia.games.diplomacy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+final class MoveJournalTest {
+
+	@TempDir
+	Path directory;
+
+	@ParameterizedTest
+	@ValueSource(ints = { 8, 31, 200 })
+	void replaysEveryTurn(int size) throws IOException {
+		Path file = directory.resolve("game.dipj");
+		Games games = new Games(size, size);
+		BoardState state = Games.start(size);
+		List<PackedBoard> turns = new ArrayList<>();
+		long[] moves = new long[300];
+		try (MoveJournal.Writer writer = new MoveJournal.Writer(file, size, 16)) {
+			for (int i = 0; i < moves.length; i++) {
+				turns.add(PackedBoard.of(state));
+				moves[i] = games.randomMove(state);
+				writer.append(state, moves[i]);
+				state.apply(moves[i]);
+			}
+		}
+		turns.add(PackedBoard.of(state));
+
+		try (MoveJournal.Reader reader = new MoveJournal.Reader(file)) {
+			assertEquals(size, reader.getSize());
+			assertEquals(moves.length, reader.getMoveCount());
+			assertArrayEquals(moves, reader.getMoves());
+			BoardState replayed = new BoardState(size);
+			for (int turn = 0; turn < turns.size(); turn++) {
+				reader.seek(turn, replayed);
+				assertEquals(turns.get(turn), PackedBoard.of(replayed), "Turn " + turn);
+			}
+		}
+	}
+
+	/**
+	 * Undoing several moves in a row writes a snapshot for each, one after
+	 * another, with no moves between them.
+	 */
+	@Test
+	void readsPastBackToBackRestarts() throws IOException {
+		Path file = directory.resolve("restarts.dipj");
+		Games games = new Games(8, 1);
+		BoardState state = Games.start(8);
+		List<Long> moves = new ArrayList<>();
+		List<PackedBoard> earlier = new ArrayList<>();
+		try (MoveJournal.Writer writer = new MoveJournal.Writer(file, 8)) {
+			for (int i = 0; i < 10; i++) {
+				earlier.add(PackedBoard.of(state));
+				long move = games.randomMove(state);
+				writer.append(state, move);
+				state.apply(move);
+				moves.add(move);
+			}
+			// Go back three moves, one at a time.
+			for (int i = 1; i <= 3; i++) {
+				earlier.get(earlier.size() - i).unpack(state);
+				writer.restart(state);
+			}
+			for (int i = 0; i < 5; i++) {
+				long move = games.randomMove(state);
+				writer.append(state, move);
+				state.apply(move);
+				moves.add(move);
+			}
+		}
+
+		try (MoveJournal.Reader reader = new MoveJournal.Reader(file)) {
+			assertEquals(moves.size(), reader.getMoveCount());
+			long[] expected = new long[moves.size()];
+			for (int i = 0; i < expected.length; i++)
+				expected[i] = moves.get(i);
+			assertArrayEquals(expected, reader.getMoves());
+			BoardState replayed = new BoardState(8);
+			reader.seek(reader.getMoveCount(), replayed);
+			assertEquals(PackedBoard.of(state), PackedBoard.of(replayed));
+		}
+	}
+
+	/**
+	 * A snapshot with no moves after it is replaced by the next one, rather than
+	 * kept.
+	 */
+	@Test
+	void replacesSnapshotsWithNothingAfterThem() throws IOException {
+		BoardState state = Games.start(8), other = Games.start(8);
+		other.apply(new Games(8, 3).randomMove(other));
+		long[] sizes = new long[2];
+		for (int restarts = 1; restarts <= 2; restarts++) {
+			Path file = directory.resolve("replaced" + restarts + ".dipj");
+			try (MoveJournal.Writer writer = new MoveJournal.Writer(file, 8)) {
+				long move = new Games(8, 4).randomMove(state);
+				writer.append(state, move);
+				for (int i = 0; i < restarts; i++)
+					writer.restart(i == restarts - 1 ? other : state);
+			}
+			sizes[restarts - 1] = Files.size(file);
+			try (MoveJournal.Reader reader = new MoveJournal.Reader(file)) {
+				BoardState replayed = new BoardState(8);
+				reader.seek(1, replayed);
+				assertEquals(PackedBoard.of(other), PackedBoard.of(replayed));
+			}
+		}
+		assertEquals(sizes[0], sizes[1]);
+	}
+
+}
@@ -0,0 +1,81 @@
+package org.alixia.games.diplomacy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+final class PackedBoardTest {
+
+	@ParameterizedTest
+	@ValueSource(ints = { 2, 7, 8, 21, 100 })
+	void unpacksWhatWasPacked(int size) {
+		Games games = new Games(size, size);
+		BoardState state = Games.start(size), unpacked = new BoardState(size);
+		for (int i = 0; i < 100; i++) {
+			PackedBoard board = PackedBoard.of(state);
+			assertEquals(size, board.getSize());
+			board.unpack(unpacked);
+			for (int cell = 0; cell < state.getCellCount(); cell++) {
+				assertEquals(state.get(cell), board.get(cell));
+				assertEquals(state.get(cell), unpacked.get(cell));
+			}
+			assertEquals(state.getCurrentTeam(), unpacked.getCurrentTeam());
+			assertEquals(state.getQueued(), unpacked.getQueued());
+			assertEquals(state.isPlacing(), unpacked.isPlacing());
+			assertEquals(state.hash(), unpacked.hash());
+			state.apply(games.randomMove(state));
+		}
+	}
+
+	@ParameterizedTest
+	@ValueSource(strings = { "BIG_ENDIAN", "LITTLE_ENDIAN" })
+	void readsWhatWasWritten(String order) {
+		BoardState state = Games.start(8);
+		state.apply(new Games(8, 1).randomMove(state));
+		PackedBoard board = PackedBoard.of(state);
+		ByteBuffer buffer = ByteBuffer.allocate(3 + PackedBoard.byteCount(8) + 5);
+		buffer.order(order.equals("BIG_ENDIAN") ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		buffer.position(3);
+		board.write(buffer);
+		assertEquals(3 + PackedBoard.byteCount(8), buffer.position());
+
+		buffer.flip().position(3);
+		PackedBoard read = PackedBoard.read(buffer);
+		assertEquals(board, read);
+		assertEquals(board.hashCode(), read.hashCode());
+		assertEquals(3 + PackedBoard.byteCount(8), buffer.position());
+		// The board doesn't depend on the buffer once it has been read.
+		buffer.clear();
+		while (buffer.hasRemaining())
+			buffer.put((byte) 0);
+		assertEquals(board, read);
+	}
+
+	@Test
+	void anEightByEightGameTakesFortyBytes() {
+		assertEquals(40, PackedBoard.byteCount(8));
+	}
+
+	@Test
+	void differentGamesAreNotEqual() {
+		BoardState state = Games.start(8);
+		PackedBoard before = PackedBoard.of(state);
+		state.apply(new Games(8, 2).randomMove(state));
+		assertNotEquals(before, PackedBoard.of(state));
+	}
+
+	@Test
+	void rejectsImpossibleSizes() {
+		ByteBuffer buffer = ByteBuffer.allocate(PackedBoard.byteCount(8));
+		buffer.putLong(0, 1);
+		assertThrows(IllegalArgumentException.class, () -> PackedBoard.read(buffer));
+	}
+
+}
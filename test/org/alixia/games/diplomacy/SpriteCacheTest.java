@@ -0,0 +1,33 @@
+package org.alixia.games.diplomacy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+final class SpriteCacheTest {
+
+	@Test
+	void roundsSizesUpToSteps() {
+		assertEquals(1, SpriteCache.spriteSize(0.5));
+		assertEquals(64, SpriteCache.spriteSize(64));
+		assertEquals(91, SpriteCache.spriteSize(65));
+		assertEquals(91, SpriteCache.spriteSize(90.5));
+		assertEquals(128, SpriteCache.spriteSize(91));
+	}
+
+	@Test
+	void zoomingCrossesFewSteps() {
+		Set<Integer> sizes = new HashSet<>();
+		for (double cell = 8; cell <= 256; cell *= 1.001) {
+			int size = SpriteCache.spriteSize(cell);
+			assertTrue(size >= cell && size < cell * Math.sqrt(2) + 1, cell + " -> " + size);
+			sizes.add(size);
+		}
+		assertEquals(11, sizes.size());
+	}
+
+}
@@ -0,0 +1,70 @@
+package org.alixia.games.diplomacy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+final class TranspositionTableTest {
+
+	private final TranspositionTable table = new TranspositionTable(1);
+	private final long[] entry = new long[2];
+
+	@Test
+	void findsWhatWasStored() {
+		long move = Moves.of(Moves.SPAWN, 12, 21);
+		table.store(0x1234_5678_9ABC_DEF0L, -250, 7, TranspositionTable.LOWER_BOUND, move);
+		assertTrue(table.probe(0x1234_5678_9ABC_DEF0L, entry));
+		assertEquals(-250, TranspositionTable.score(entry[0]));
+		assertEquals(7, TranspositionTable.depth(entry[0]));
+		assertEquals(TranspositionTable.LOWER_BOUND, TranspositionTable.bound(entry[0]));
+		assertEquals(move, entry[1]);
+	}
+
+	@Test
+	void missesWhatWasNeverStored() {
+		table.store(1, 0, 1, TranspositionTable.EXACT, Moves.PASS);
+		assertFalse(table.probe(2, entry));
+		assertFalse(table.probe(1 | 1L << 40, entry));
+	}
+
+	@Test
+	void keepsDeeperResultsFromTheSameSearch() {
+		table.store(5, 10, 6, TranspositionTable.EXACT, 1);
+		table.store(5, 20, 2, TranspositionTable.UPPER_BOUND, 2);
+		assertTrue(table.probe(5, entry));
+		assertEquals(6, TranspositionTable.depth(entry[0]));
+
+		// A later search replaces it.
+		table.newSearch();
+		table.store(5, 20, 2, TranspositionTable.UPPER_BOUND, 2);
+		assertTrue(table.probe(5, entry));
+		assertEquals(2, TranspositionTable.depth(entry[0]));
+		assertEquals(2, entry[1]);
+	}
+
+	@Test
+	void neverReturnsAnotherPositionsEntry() {
+		SplittableRandom random = new SplittableRandom(9);
+		// Far more positions than fit, so most are replaced.
+		for (int i = 0; i < table.getCapacity() * 4; i++) {
+			long hash = random.nextLong();
+			table.store(hash, (int) hash, 1, TranspositionTable.EXACT, hash >>> 1);
+		}
+		random = new SplittableRandom(9);
+		int found = 0;
+		for (int i = 0; i < table.getCapacity() * 4; i++) {
+			long hash = random.nextLong();
+			if (table.probe(hash, entry)) {
+				found++;
+				assertEquals((int) hash, TranspositionTable.score(entry[0]));
+				assertEquals(hash >>> 1, entry[1]);
+			}
+		}
+		assertTrue(found > 0);
+	}
+
+}